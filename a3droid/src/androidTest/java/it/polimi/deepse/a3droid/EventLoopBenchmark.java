@@ -0,0 +1,95 @@
+package it.polimi.deepse.a3droid;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Message;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import it.polimi.deepse.a3droid.pattern.EventLoopPool;
+
+/**
+ * Compares the threads used by the group channels of a node on their own HandlerThreads, i.e. one for
+ * the channel, one for its control handler and one for its active role, with the threads used on the
+ * node's shared event loops. Each group gets the same stream of messages, which must be handled in order.
+ * The thread counts and times are logged with the tag EventLoopBenchmark.
+ */
+public class EventLoopBenchmark extends AndroidTestCase {
+
+    private static final String TAG = "EventLoopBenchmark";
+
+    private static final int GROUPS = 5;
+    private static final int HANDLERS_PER_GROUP = 3;
+    private static final int MESSAGES_PER_HANDLER = 10000;
+    private static final int EVENT_LOOPS = 2;
+
+    public void testOwnThreads() throws InterruptedException {
+        int before = Thread.activeCount();
+        List<HandlerThread> threads = new ArrayList<>();
+        List<Looper> loopers = new ArrayList<>();
+        for (int i = 0; i < GROUPS * HANDLERS_PER_GROUP; i++) {
+            HandlerThread thread = new HandlerThread("Group" + (i / HANDLERS_PER_GROUP) + "_" + i);
+            thread.start();
+            threads.add(thread);
+            loopers.add(thread.getLooper());
+        }
+        run("own threads", before, loopers);
+        for (HandlerThread thread : threads)
+            thread.quitSafely();
+    }
+
+    public void testSharedEventLoops() throws InterruptedException {
+        int before = Thread.activeCount();
+        EventLoopPool.enable(EVENT_LOOPS);
+        List<Looper> loopers = new ArrayList<>();
+        for (int i = 0; i < GROUPS * HANDLERS_PER_GROUP; i++)
+            loopers.add(EventLoopPool.getLooper("Group" + (i / HANDLERS_PER_GROUP)));
+        run("shared event loops", before, loopers);
+    }
+
+    private void run(String mode, int threadsBefore, List<Looper> loopers) throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(loopers.size());
+        List<OrderedHandler> handlers = new ArrayList<>();
+        for (Looper looper : loopers)
+            handlers.add(new OrderedHandler(looper, done));
+        int threads = Thread.activeCount() - threadsBefore;
+
+        long start = SystemClock.elapsedRealtime();
+        for (int m = 0; m < MESSAGES_PER_HANDLER; m++)
+            for (OrderedHandler handler : handlers)
+                handler.sendMessage(handler.obtainMessage(m));
+        assertTrue(done.await(60, TimeUnit.SECONDS));
+        long elapsed = SystemClock.elapsedRealtime() - start;
+
+        for (OrderedHandler handler : handlers)
+            assertTrue(handler.inOrder);
+        Log.i(TAG, mode + ": " + GROUPS + " groups, " + threads + " threads, "
+                + GROUPS * HANDLERS_PER_GROUP * MESSAGES_PER_HANDLER + " messages in " + elapsed + "ms");
+    }
+
+    private static class OrderedHandler extends Handler {
+
+        private final CountDownLatch done;
+        private int next = 0;
+        private boolean inOrder = true;
+
+        OrderedHandler(Looper looper, CountDownLatch done) {
+            super(looper);
+            this.done = done;
+        }
+
+        @Override
+        public void handleMessage(Message msg) {
+            inOrder &= msg.what == next;
+            if (++next == MESSAGES_PER_HANDLER)
+                done.countDown();
+        }
+    }
+}
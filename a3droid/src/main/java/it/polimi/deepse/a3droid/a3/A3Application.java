@@ -3,6 +3,7 @@ package it.polimi.deepse.a3droid.a3;
 import android.app.Application;
 import android.content.ComponentName;
 import android.content.Intent;
+import android.os.SystemClock;
 import android.provider.Settings;
 import android.util.Log;
 
@@ -154,8 +155,10 @@ public class A3Application extends Application implements Observable{
      */
     public synchronized void addFoundGroup(String groupName, String suffix) {
         Log.i(TAG, "addFoundGroup(" + groupName + "," + suffix + ")");
-        if(!mGroups.containsKey(groupName))
+        if(!mGroups.containsKey(groupName)) {
             mGroups.put(groupName, new TreeSet<String>());
+            mFoundTimes.put(groupName, SystemClock.elapsedRealtime());
+        }
 
         mGroups.get(groupName).add(suffix);
     }
@@ -170,8 +173,10 @@ public class A3Application extends Application implements Observable{
         if (mGroups.containsKey(groupName)) {
             Log.i(TAG, "removeFoundGroup(): removed " + groupName + " with suffix " + suffix);
             mGroups.get(groupName).remove(suffix);
-            if(mGroups.get(groupName).isEmpty())
+            if(mGroups.get(groupName).isEmpty()) {
                 mGroups.remove(groupName);
+                mFoundTimes.remove(groupName);
+            }
         }
     }
 
@@ -194,6 +199,14 @@ public class A3Application extends Application implements Observable{
         return mGroups.containsKey(groupName);
     }
 
+    /**
+     * @return the time the group was found, as SystemClock.elapsedRealtime(), or -1 if it isn't found
+     */
+    public synchronized long getGroupFoundTime(String groupName){
+        Long time = mFoundTimes.get(groupName);
+        return time != null ? time : -1;
+    }
+
     public synchronized String getGroupSuffix(String groupName){
         Log.i(TAG, "getGroupSuffix(" + groupName + "):");
         return mGroups.containsKey(groupName) ? mGroups.get(groupName).iterator().next() : null;
@@ -208,6 +221,9 @@ public class A3Application extends Application implements Observable{
      */
     private Map<String, Set<String>> mGroups = new ConcurrentHashMap<>();
 
+    /**The time each group in "mGroups" was found, as SystemClock.elapsedRealtime().*/
+    private Map<String, Long> mFoundTimes = new HashMap<>();
+
     public synchronized boolean isNodeCreated(ArrayList<A3GroupDescriptor> a3GroupDescriptors,
                                               ArrayList<String> roles){
         A3Node node = new A3Node(this, a3GroupDescriptors, roles);
@@ -217,6 +233,7 @@ public class A3Application extends Application implements Observable{
     public synchronized A3Node createNode(ArrayList<A3GroupDescriptor> a3GroupDescriptors,
                              ArrayList<String> roles){
         A3Node node = new A3Node(this, a3GroupDescriptors, roles);
+        node.resolveRoleFactories();
         addNode(node);
         return node;
     }
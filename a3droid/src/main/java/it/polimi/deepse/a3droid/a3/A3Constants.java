@@ -11,6 +11,12 @@ public class A3Constants {
     public static final int CONTROL_NEW_SUPERVISOR = 1;
     public static final int CONTROL_GET_SUPERVISOR = 2;
     public static final int CONTROL_NO_SUPERVISOR = 3;
+    public static final int CONTROL_HEARTBEAT = 4;
+    public static final int CONTROL_PING = 5;
+    public static final int CONTROL_PONG = 6;
+    public static final int CONTROL_LEASE_RENEW = 7;
+    public static final int CONTROL_LEASE_ACK = 8;
+    public static final int CONTROL_LEASE_RELEASE = 9;
 
     public static final int CONTROL_STACK_REQUEST = 10;
     public static final int CONTROL_STACK_REPLY = 11;
@@ -29,6 +35,21 @@ public class A3Constants {
     public static final int CONTROL_MERGE_NOTIFICATION = 31;
     public static final int CONTROL_MERGE_REPLY = 32;
     public static final int CONTROL_SPLIT = 33;
+    public static final int CONTROL_SPLIT_FITNESS = 34;
+
+    public static final int CONTROL_GET_VIEW = 40;
+    public static final int CONTROL_VIEW_SNAPSHOT = 41;
+    public static final int CONTROL_VIEW_DELTA = 42;
+    public static final int CONTROL_VIEW_EPOCH = 43;
+
+    public static final int CONTROL_CANDIDATE_FITNESS = 50;
+    public static final int CONTROL_BACKUP_ASSIGN = 51;
+    public static final int CONTROL_BACKUP_REVOKE = 52;
+    public static final int CONTROL_STATE_DELTA = 53;
+    public static final int CONTROL_HANDOVER_REQUEST = 54;
+    public static final int CONTROL_HANDOVER_REPLY = 55;
+    public static final int CONTROL_HANDOVER_ABORT = 56;
+    public static final int CONTROL_HANDOVER_FORWARD = 57;
 
 }
 
@@ -2,10 +2,13 @@ package it.polimi.deepse.a3droid.a3;
 
 import org.greenrobot.eventbus.EventBus;
 
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 import it.polimi.deepse.a3droid.a3.events.A3GroupEvent;
 import it.polimi.deepse.a3droid.pattern.Timer;
 import it.polimi.deepse.a3droid.pattern.TimerInterface;
-import it.polimi.deepse.a3droid.utility.RandomWait;
 
 /**
  * Handles three types of error: from service setup, from channel setup and from the bus.
@@ -38,7 +41,9 @@ public class A3EventHandler implements TimerInterface{
                 EventBus.getDefault().post(new A3GroupEvent(channel.getGroupName(), event));
                 channel.setGroupState(A3GroupDescriptor.A3GroupState.ELECTION);
                 channel.getGroupView().addGroupMember(channel.getChannelId());
-                new Timer(this, WAIT_AND_QUERY_ROLE_EVENT, WAIT_AND_QUERY_ROLE_FIXED_TIME_1).start();
+                channel.pingGroup();
+                new Timer(this, WAIT_AND_QUERY_ROLE_EVENT,
+                        channel.getElectionWait(2, WAIT_AND_QUERY_ROLE_MAX_TIME_1)).start();
                 break;
             case GROUP_LEFT:
                 EventBus.getDefault().post(new A3GroupEvent(channel.getGroupName(), event));
@@ -50,17 +55,24 @@ public class A3EventHandler implements TimerInterface{
                 break;
             case MEMBER_JOINED:
                 EventBus.getDefault().post(new A3GroupEvent(channel.getGroupName(), event, obj));
-                channel.getGroupView().addGroupMember((String) obj);
+                addMembershipChange((String) obj, true);
                 break;
             case MEMBER_LEFT:
                 EventBus.getDefault().post(new A3GroupEvent(channel.getGroupName(), event, obj));
-                channel.getGroupView().removeGroupMember((String) obj);
+                if (obj.equals(channel.getSupervisorId()))
+                    applySupervisorLeft((String) obj);
+                else
+                    addMembershipChange((String) obj, false);
                 break;
             case SUPERVISOR_LEFT:
                 EventBus.getDefault().post(new A3GroupEvent(channel.getGroupName(), event));
-                new Timer(this, WAIT_AND_HANDLE_SUPERVISOR_LEFT_EVENT,
-                        randomWait.next(WAIT_AND_HANDLE_SUPERVISOR_LEFT_FIXED_TIME, WAIT_AND_HANDLE_SUPERVISOR_LEFT_RANDOM_TIME)
-                ).start();
+                String leftSupervisorId = channel.getSupervisorId();
+                channel.releaseLease(leftSupervisorId);
+                if (!channel.takeOverAsBackup(leftSupervisorId))
+                    new Timer(this, WAIT_AND_HANDLE_SUPERVISOR_LEFT_EVENT,
+                            channel.getElectionWait(1, WAIT_AND_HANDLE_SUPERVISOR_LEFT_MAX_TIME),
+                            leftSupervisorId
+                    ).start();
                 break;
             case SUPERVISOR_ELECTED:
                 EventBus.getDefault().post(new A3GroupEvent(channel.getGroupName(), event));
@@ -103,41 +115,118 @@ public class A3EventHandler implements TimerInterface{
         }
     }
 
-    private void handleSupervisorLeftEvent() {
+    /**
+     * Members joining or leaving are not applied to the group view one by one: they are collected
+     * for MEMBERSHIP_BATCH_WINDOW and then applied together, with a single GROUP_VIEW_CHANGED event.
+     * A member that joined and left within the window only counts for its last event.
+     * MEMBER_JOINED and MEMBER_LEFT are still posted for each member as soon as they happen.
+     *
+     * @param memberName the address of the member
+     * @param joined true if it joined the group, false if it left
+     */
+    private void addMembershipChange(String memberName, boolean joined) {
+        synchronized (pendingMembershipChanges) {
+            pendingMembershipChanges.remove(memberName);
+            pendingMembershipChanges.put(memberName, joined);
+            if (pendingMembershipChanges.size() == 1)
+                new Timer(this, APPLY_MEMBERSHIP_CHANGES_EVENT, MEMBERSHIP_BATCH_WINDOW).start();
+        }
+    }
+
+    /**
+     * The supervisor leaving is applied at once, without waiting for the batch window, so that the
+     * election of a new one is not delayed. The other pending changes are left to their batch.
+     *
+     * @param supervisorId the address of the supervisor which left
+     */
+    private void applySupervisorLeft(String supervisorId) {
+        synchronized (pendingMembershipChanges) {
+            pendingMembershipChanges.remove(supervisorId);
+        }
+        applyMembershipChanges(Collections.singletonMap(supervisorId, false));
+    }
+
+    private void applyMembershipChanges() {
+        Map<String, Boolean> changes;
+        synchronized (pendingMembershipChanges) {
+            changes = new LinkedHashMap<>(pendingMembershipChanges);
+            pendingMembershipChanges.clear();
+        }
+        if (!changes.isEmpty())
+            applyMembershipChanges(changes);
+    }
+
+    private void applyMembershipChanges(Map<String, Boolean> changes) {
+        A3GroupView.Change change = channel.getGroupView().applyChanges(changes);
+        if (change != null && !change.left.isEmpty())
+            channel.updateBackup();
+        if (change != null)
+            EventBus.getDefault().post(new A3GroupEvent(channel.getGroupName(),
+                    A3GroupEvent.A3GroupEventType.GROUP_VIEW_CHANGED, change));
+    }
+
+    /** The membership changes waiting to be applied, in the order of their last event **/
+    private final Map<String, Boolean> pendingMembershipChanges = new LinkedHashMap<>();
+
+    /**
+     * Nothing is done if a new supervisor, e.g. the backup, was elected in the meantime.
+     *
+     * @param leftSupervisorId the address of the supervisor which left
+     */
+    private void handleSupervisorLeftEvent(String leftSupervisorId) {
+        String supervisorId = channel.getSupervisorId();
+        if (supervisorId != null && !supervisorId.equals(leftSupervisorId))
+            return;
         if(channel.getGroupState().equals(A3GroupDescriptor.A3GroupState.ACTIVE)) {
             channel.setGroupState(A3GroupDescriptor.A3GroupState.ELECTION);
             channel.deactivateActiveRole();
             channel.clearSupervisorId();
             new Timer(this, WAIT_AND_QUERY_ROLE_EVENT,
-                    randomWait.next(WAIT_AND_QUERY_ROLE_FIXED_TIME_2, WAIT_AND_QUERY_ROLE_RANDOM_TIME)
+                    channel.getElectionWait(0, WAIT_AND_QUERY_ROLE_MAX_TIME_2)
             ).start();
         }
     }
 
-    public void handleTimeEvent(int reason, Object object) {
+    /**
+     * The timeouts are handled on the control handler thread of the channel, as they post events to the
+     * EventBus and query the supervisor.
+     */
+    public void handleTimeEvent(final int reason, final Object object) {
+        channel.getControlExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                handleTimeout(reason, object);
+            }
+        });
+    }
+
+    private void handleTimeout(int reason, Object object) {
         switch (reason) {
             case WAIT_AND_HANDLE_SUPERVISOR_LEFT_EVENT:
-                handleSupervisorLeftEvent();
+                handleSupervisorLeftEvent((String) object);
                 break;
             case WAIT_AND_QUERY_ROLE_EVENT:
                 channel.queryRole();
                 break;
+            case APPLY_MEMBERSHIP_CHANGES_EVENT:
+                applyMembershipChanges();
+                break;
             default:
                 break;
         }
     }
 
-    private RandomWait randomWait = new RandomWait();
-
+    /** The waits are derived from the control round-trip time of the channel, up to these ceilings **/
     private static final int WAIT_AND_HANDLE_SUPERVISOR_LEFT_EVENT = 0;
-    private static final int WAIT_AND_HANDLE_SUPERVISOR_LEFT_FIXED_TIME = 500;
-    private static final int WAIT_AND_HANDLE_SUPERVISOR_LEFT_RANDOM_TIME = 500;
+    private static final int WAIT_AND_HANDLE_SUPERVISOR_LEFT_MAX_TIME = 1000;
 
     private static final int WAIT_AND_QUERY_ROLE_EVENT = 1;
-    /** Used as fixed time after a GROUP_JOINED event **/
-    private static final int WAIT_AND_QUERY_ROLE_FIXED_TIME_1 = 3000;
-    /** Used as fixed time part after a MEMBER_LEFT event **/
-    private static final int WAIT_AND_QUERY_ROLE_FIXED_TIME_2 = 0;
-    /** Used as random time part after a MEMBER_LEFT event **/
-    private static final int WAIT_AND_QUERY_ROLE_RANDOM_TIME = 1000;
+    /** Used as maximum time after a GROUP_JOINED event **/
+    private static final int WAIT_AND_QUERY_ROLE_MAX_TIME_1 = 3000;
+    /** Used as maximum time after a SUPERVISOR_LEFT event **/
+    private static final int WAIT_AND_QUERY_ROLE_MAX_TIME_2 = 1000;
+
+    private static final int APPLY_MEMBERSHIP_CHANGES_EVENT = 2;
+    /** Time during which joins and leaves are collected before being applied together **/
+    private static final int MEMBERSHIP_BATCH_WINDOW = 100;
 }
@@ -1,14 +1,20 @@
 package it.polimi.deepse.a3droid.a3;
 
 import android.os.HandlerThread;
+import android.os.Looper;
 import android.os.Message;
+import android.os.SystemClock;
 import android.util.Log;
 
 import org.greenrobot.eventbus.EventBus;
 
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 
 import it.polimi.deepse.a3droid.a3.events.A3ErrorEvent;
 import it.polimi.deepse.a3droid.a3.events.A3GroupEvent;
@@ -20,10 +26,13 @@ import it.polimi.deepse.a3droid.a3.exceptions.A3GroupDuplicationException;
 import it.polimi.deepse.a3droid.a3.exceptions.A3GroupJoinException;
 import it.polimi.deepse.a3droid.a3.exceptions.A3MessageDeliveryException;
 import it.polimi.deepse.a3droid.a3.exceptions.A3NoGroupDescriptionException;
+import it.polimi.deepse.a3droid.pattern.EventLoopPool;
 import it.polimi.deepse.a3droid.pattern.Observable;
 import it.polimi.deepse.a3droid.pattern.Observer;
+import it.polimi.deepse.a3droid.pattern.Promise;
 import it.polimi.deepse.a3droid.pattern.Timer;
 import it.polimi.deepse.a3droid.pattern.TimerInterface;
+import it.polimi.deepse.a3droid.utility.RttEstimator;
 
 /**
  * This class implements the communication methods for sending and receiving both application
@@ -88,12 +97,32 @@ public abstract class A3GroupChannel extends HandlerThread implements A3GroupCha
         this.application = application;
         this.node = node;
         this.groupDescriptor = descriptor;
+        this.sharedLooper = EventLoopPool.getLooper(groupName);
         initializeRoles(followerRole, supervisorRole);
     }
 
+    /**
+     * The event loop of the node serving this channel, or null if the channel runs on its own thread
+     */
+    private final Looper sharedLooper;
+
+    /**
+     * Starts the thread of this channel, unless the channel is served by the node's shared event loops.
+     */
+    protected void startLooper() {
+        if (sharedLooper == null)
+            start();
+    }
+
+    @Override
+    public Looper getLooper() {
+        return sharedLooper != null ? sharedLooper : super.getLooper();
+    }
+
     public abstract void prepareHandler();
 
     public void connect() {
+        connectTime = SystemClock.elapsedRealtime();
         addObservers(application.getObservers());
         initializeHandlers();
         notifyObservers(A3GroupChannel.CONNECT_EVENT);
@@ -120,15 +149,38 @@ public abstract class A3GroupChannel extends HandlerThread implements A3GroupCha
      *
      */
     public void disconnect() {
+        failStateWaiters(new A3GroupDisconnectedException("Disconnected from group " + groupName));
         deactivateActiveRole();
         quitHandlers();
         notifyObservers(A3GroupChannel.DISCONNECT_EVENT);
         clearObservers();
     }
 
+    /**
+     * Disconnects without blocking, giving the messages still in the outbound some time to be sent.
+     *
+     * @param flushTimeout the milliseconds after which the messages still in the outbound are dropped,
+     *                     immediately if 0
+     * @return completed when the channel disconnects, with false if some messages were dropped
+     */
+    public abstract Promise<Boolean> disconnect(long flushTimeout);
+
+    /**
+     * Reconnects without blocking, as it is called from the threads of the channel itself, e.g. when its
+     * session is lost, and those threads handle the disconnection.
+     */
     public void reconnect(){
         try {
-            node.reconnect(groupName);
+            node.reconnectAsync(groupName).addCallback(new Promise.Callback<Boolean>() {
+                @Override
+                public void onSuccess(Boolean result) {
+                }
+
+                @Override
+                public void onFailure(Exception e) {
+                    Log.e(TAG, "reconnect(): " + e.getMessage());
+                }
+            });
         } catch (Exception e) {
             Log.e(TAG, e.getMessage());
         }
@@ -168,6 +220,14 @@ public abstract class A3GroupChannel extends HandlerThread implements A3GroupCha
         groupControl.quitSafely();
     }
 
+    /**
+     * @return runs tasks on the control handler thread of this channel, where the timeouts of the channel
+     * are handled rather than on the node's timer service thread
+     */
+    protected Executor getControlExecutor() {
+        return groupControl;
+    }
+
     /**
      * Forward event to handler without argument
      *
@@ -211,6 +271,7 @@ public abstract class A3GroupChannel extends HandlerThread implements A3GroupCha
      * This justifies the double verification for becoming a supervisor.
      */
     protected void queryRole() {
+        electionRounds = 0;
         if((getGroupView().isViewEmpty() ||
                 getGroupView().isAloneInView(channelId)) && hasSupervisorRole)
             becomeSupervisor();
@@ -218,6 +279,600 @@ public abstract class A3GroupChannel extends HandlerThread implements A3GroupCha
             querySupervisor();
     }
 
+    /** Gossip election methods **/
+    /**
+     * @return true if the group descriptor enables the single-round gossip election
+     */
+    protected boolean isGossipElection() {
+        return groupDescriptor != null && groupDescriptor.isGossipElection();
+    }
+
+    /**
+     * Sends a control message with the supervisor fitness of this channel, if it can be supervisor,
+     * piggy-backed at the end of its content. This is the only place where the fitness is sent, so it
+     * is recorded here as the one the other candidates rank this channel with.
+     *
+     * @param reason    the kind of the message
+     * @param content   the content preceding the fitness
+     * @param addresses the recipients of the message, or null to broadcast it
+     */
+    private void enqueueGossip(int reason, String content, String[] addresses) {
+        if (hasSupervisorRole) {
+            int fitness = groupDescriptor.getSupervisorFitnessFunction();
+            gossipedFitness = fitness;
+            content += fitness;
+        }
+        enqueueControl(addresses == null ? new A3Message(reason, content) : new A3Message(reason, content, addresses));
+    }
+
+    /**
+     * The fitness of a member may change over time (e.g. the battery level), so this channel ranks
+     * itself with the fitness it last sent and not with the current one: otherwise two candidates
+     * could each rank the other higher and none would take the role.
+     *
+     * @return the supervisor fitness this channel last sent to the group
+     */
+    protected int getGossipedFitness() {
+        Integer fitness = gossipedFitness;
+        return fitness != null ? fitness : groupDescriptor.getSupervisorFitnessFunction();
+    }
+
+    /**
+     * Stores the supervisor fitness gossiped by a candidate.
+     *
+     * @param address the address of the candidate
+     * @param fitness the fitness piggy-backed on its message, empty if it can't be supervisor
+     */
+    protected void setCandidateFitness(String address, String fitness) {
+        if (!fitness.isEmpty() && !address.equals(channelId))
+            candidateFitness.put(address, Integer.parseInt(fitness));
+    }
+
+    /**
+     * All the members agree on the order of the candidates, as it only depends on the gossiped
+     * fitness and on the addresses: higher fitness first, then lower address.
+     *
+     * @return true if candidate a ranks above candidate b
+     */
+    static boolean ranksAbove(String a, int aFitness, String b, int bFitness) {
+        return aFitness != bFitness ? aFitness > bFitness : a.compareTo(b) < 0;
+    }
+
+    /**
+     * Candidates which left the group view are ignored.
+     *
+     * @return true if this channel can be supervisor and ranks above every other candidate in the group view
+     */
+    protected boolean isBestCandidate() {
+        if (!hasSupervisorRole)
+            return false;
+        A3GroupView.Snapshot view = getGroupView().getSnapshot();
+        int fitness = getGossipedFitness();
+        for (Map.Entry<String, Integer> candidate : candidateFitness.entrySet())
+            if (view.contains(candidate.getKey()) &&
+                    ranksAbove(candidate.getKey(), candidate.getValue(), channelId, fitness))
+                return false;
+        return true;
+    }
+
+    /**
+     * The supervisor fitness gossiped by each candidate of the group
+     **/
+    private final Map<String, Integer> candidateFitness = new ConcurrentHashMap<>();
+
+    /** The supervisor fitness this channel last sent, or null if it didn't send it yet **/
+    private volatile Integer gossipedFitness = null;
+
+    /** The rounds of the current election in which no supervisor announced itself **/
+    private int electionRounds = 0;
+
+    /**
+     * After this many rounds without an announcement a candidate takes the role even if it doesn't
+     * rank first, e.g. because the best candidate left or its fitness was not received. If more
+     * candidates do, the conflict is resolved as for concurrent announcements.
+     */
+    private static final int MAX_ELECTION_ROUNDS = 3;
+
+    /** Supervisor lease methods **/
+    /**
+     * @return the duration of the supervisor lease in milliseconds, or 0 if the group doesn't use leases
+     */
+    protected int getSupervisorLease() {
+        return groupDescriptor != null ? groupDescriptor.getSupervisorLease() : 0;
+    }
+
+    /**
+     * @return the period of the view epoch broadcast in milliseconds, or 0 if it is disabled
+     */
+    protected int getViewSyncPeriod() {
+        return groupDescriptor != null ? groupDescriptor.getViewSyncPeriod() : 0;
+    }
+
+    /**
+     * Takes the lease when this channel becomes supervisor, as if every follower acknowledged it.
+     */
+    private synchronized void acquireLease() {
+        long now = SystemClock.elapsedRealtime();
+        leaseHolder = channelId;
+        leaseExpiry = now + getSupervisorLease();
+        lastLeaseAck = now;
+    }
+
+    /**
+     * Broadcasts the renewal of this supervisor's lease, with its duration and the supervisor fitness.
+     */
+    protected void notifyLeaseRenewal() {
+        int lease = getSupervisorLease();
+        synchronized (this) {
+            leaseHolder = channelId;
+            leaseExpiry = SystemClock.elapsedRealtime() + lease;
+        }
+        enqueueGossip(A3Constants.CONTROL_LEASE_RENEW, lease + A3Constants.SEPARATOR, null);
+    }
+
+    /**
+     * Acknowledges the renewal of the lease of a supervisor.
+     *
+     * @param address the address of the supervisor
+     */
+    protected void notifyLeaseAck(String address) {
+        enqueueControl(new A3Message(A3Constants.CONTROL_LEASE_ACK, "", new String[]{address}));
+    }
+
+    /**
+     * Broadcasts that this channel gives its lease up, so that its followers accept another supervisor.
+     *
+     * @param successor the address of the supervisor to hand over to, or an empty string if there is none
+     */
+    protected void notifyLeaseRelease(String successor) {
+        releaseLease(channelId);
+        enqueueControl(new A3Message(A3Constants.CONTROL_LEASE_RELEASE, successor));
+    }
+
+    /**
+     * @param address the address of a supervisor
+     * @return true if no other supervisor holds a valid lease on this channel
+     */
+    protected synchronized boolean acceptsSupervisor(String address) {
+        return getSupervisorLease() <= 0 || leaseHolder == null || address.equals(leaseHolder) ||
+                address.equals(channelId) || SystemClock.elapsedRealtime() >= leaseExpiry;
+    }
+
+    /**
+     * Renews the lease of a supervisor, unless another supervisor holds a valid lease.
+     *
+     * @param address the address of the supervisor
+     * @param lease the duration of the lease in milliseconds
+     * @return true if the lease was renewed
+     */
+    protected synchronized boolean renewLease(String address, int lease) {
+        if (!acceptsSupervisor(address))
+            return false;
+        leaseHolder = address;
+        leaseExpiry = SystemClock.elapsedRealtime() + lease;
+        return true;
+    }
+
+    /**
+     * Drops the lease of a supervisor which left or handed over.
+     *
+     * @param address the address of the supervisor
+     */
+    protected synchronized void releaseLease(String address) {
+        if (address != null && address.equals(leaseHolder))
+            leaseHolder = null;
+    }
+
+    protected synchronized void onLeaseAck() {
+        lastLeaseAck = SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * @return true if this supervisor has followers in its view, but none of them acknowledged its lease
+     * for a whole lease duration
+     */
+    protected synchronized boolean isLeaseLost() {
+        int lease = getSupervisorLease();
+        return lease > 0 && !getGroupView().isAloneInView(channelId) &&
+                SystemClock.elapsedRealtime() - lastLeaseAck > lease;
+    }
+
+    /** The supervisor holding the lease on this channel, or null **/
+    private String leaseHolder = null;
+    private long leaseExpiry = 0;
+    /** The last time a follower acknowledged the lease of this supervisor **/
+    private long lastLeaseAck = 0;
+
+    /** Hot standby methods **/
+    /**
+     * @return true if the group descriptor enables the backup supervisor
+     */
+    protected boolean isHotStandby() {
+        return groupDescriptor != null && groupDescriptor.isHotStandby();
+    }
+
+    /**
+     * Sends the supervisor fitness of this channel to the supervisor, which designates the backup.
+     * Nothing is sent if this channel can't be supervisor.
+     */
+    protected void notifyCandidateFitness() {
+        String supervisorId = getSupervisorId();
+        if (!isHotStandby() || !hasSupervisorRole || supervisorId == null || supervisorId.equals(channelId))
+            return;
+        enqueueGossip(A3Constants.CONTROL_CANDIDATE_FITNESS, "", new String[]{supervisorId});
+    }
+
+    /**
+     * Designates as backup the candidate in the group view which ranks first after this supervisor,
+     * if it changed, and sends it the full state of the supervisor role.
+     * It is called when this channel becomes supervisor, when a candidate reports its fitness
+     * and when the group view changes.
+     */
+    protected synchronized void updateBackup() {
+        if (!isSupervisor() || !isHotStandby())
+            return;
+        A3GroupView.Snapshot view = getGroupView().getSnapshot();
+        String best = getBestCandidate(view);
+        if (best == null ? backupId == null : best.equals(backupId))
+            return;
+        if (backupId != null && view.contains(backupId))
+            enqueueControl(new A3Message(A3Constants.CONTROL_BACKUP_REVOKE, "", new String[]{backupId}));
+        backupId = best;
+        if (best != null) {
+            Log.i(TAG, "Backup supervisor: " + best);
+            String state = supervisorRole.getState();
+            enqueueControl(new A3Message(A3Constants.CONTROL_BACKUP_ASSIGN, state != null ? state : "", new String[]{best}));
+        }
+    }
+
+    /**
+     * @return the candidate in the view which ranks first, this channel excluded, or null if none is known
+     */
+    private String getBestCandidate(A3GroupView.Snapshot view) {
+        String best = null;
+        int bestFitness = 0;
+        for (Map.Entry<String, Integer> candidate : candidateFitness.entrySet()) {
+            if (view.contains(candidate.getKey()) &&
+                    (best == null || ranksAbove(candidate.getKey(), candidate.getValue(), best, bestFitness))) {
+                best = candidate.getKey();
+                bestFitness = candidate.getValue();
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Sends a change of the supervisor role's state to the backup, if there is one.
+     *
+     * @param delta the change of the state
+     */
+    protected synchronized void replicateSupervisorState(String delta) {
+        if (isSupervisor() && backupId != null)
+            enqueueControl(new A3Message(A3Constants.CONTROL_STATE_DELTA, delta, new String[]{backupId}));
+    }
+
+    /**
+     * Called when the supervisor designates this channel as its backup.
+     *
+     * @param supervisorId the address of the supervisor
+     * @param state its full state, empty if it has none
+     */
+    protected void becomeBackup(String supervisorId, String state) {
+        if (!hasSupervisorRole || !supervisorId.equals(getSupervisorId()))
+            return;
+        Log.i(TAG, "becomeBackup(" + supervisorId + ")");
+        standbyFor = supervisorId;
+        supervisorRole.applyState(state.isEmpty() ? null : state);
+    }
+
+    /**
+     * Called when the supervisor designated another backup.
+     *
+     * @param supervisorId the address of the supervisor
+     */
+    protected void clearBackup(String supervisorId) {
+        if (supervisorId.equals(standbyFor))
+            standbyFor = null;
+    }
+
+    /**
+     * Applies a change of the supervisor state, if this channel is its backup.
+     *
+     * @param supervisorId the address of the supervisor which sent the change
+     * @param delta the change of the state
+     */
+    protected void applyStateDelta(String supervisorId, String delta) {
+        if (supervisorId.equals(standbyFor))
+            supervisorRole.applyStateDelta(delta);
+    }
+
+    /**
+     * If this channel is the backup of the supervisor which left, it becomes the supervisor right away,
+     * with the replicated state, instead of going through a new election.
+     *
+     * @param leftSupervisorId the address of the supervisor which left
+     * @return true if this channel took over
+     */
+    protected boolean takeOverAsBackup(String leftSupervisorId) {
+        if (leftSupervisorId == null || !leftSupervisorId.equals(standbyFor))
+            return false;
+        Log.i(TAG, "takeOverAsBackup(" + leftSupervisorId + ")");
+        standbyFor = null;
+        candidateFitness.remove(leftSupervisorId);
+        becomeSupervisor();
+        return true;
+    }
+
+    /** Supervisor handover methods **/
+    /**
+     * Starts handing the supervisor role over to a successor, which is sent the state of the supervisor
+     * role. From now on the application messages for the supervisor are kept, and they are forwarded to
+     * the successor with the role's pending messages once it is ready. The successor announces itself
+     * after this channel told the followers to follow it, so the group never goes back to ELECTION.
+     *
+     * @param successor the address of the successor, or null for the best candidate this supervisor knows
+     * @return false if this channel is not the supervisor, a handover is already running or there is no successor
+     */
+    protected boolean handOverSupervisor(String successor) {
+        A3GroupView.Snapshot view = getGroupView().getSnapshot();
+        if (successor == null)
+            successor = getBestCandidate(view);
+        synchronized (this) {
+            if (!isSupervisor() || handoverTo != null)
+                return false;
+            if (successor == null || successor.equals(channelId) || !view.contains(successor))
+                return false;
+            handoverTo = successor;
+            handoverCompleted = false;
+            handoverDrained = false;
+        }
+        Log.i(TAG, "handOverSupervisor(" + successor + ")");
+        String state = supervisorRole.getState();
+        enqueueControl(new A3Message(A3Constants.CONTROL_HANDOVER_REQUEST, state != null ? state : "", new String[]{successor}));
+        new Timer(this, HANDOVER_TIMEOUT_EVENT, getElectionWait(4, HANDOVER_MAX_TIMEOUT), successor).start();
+        return true;
+    }
+
+    /**
+     * Called on the successor, which activates the supervisor role with the state of the current
+     * supervisor, without announcing itself yet.
+     *
+     * @param supervisorId the address of the supervisor handing over
+     * @param state the state of its supervisor role, empty if it has none
+     * @return false if this channel can't take the role over
+     */
+    protected boolean prepareTakeOver(String supervisorId, String state) {
+        synchronized (this) {
+            if (!hasSupervisorRole || isSupervisor() || !supervisorId.equals(getSupervisorId()))
+                return false;
+            takingOverFrom = supervisorId;
+        }
+        Log.i(TAG, "prepareTakeOver(" + supervisorId + ")");
+        supervisorRole.applyState(state.isEmpty() ? null : state);
+        if (hasFollowerRole)
+            deactivateFollower();
+        activateSupervisorRole();
+        return true;
+    }
+
+    /**
+     * Replies to a handover request
+     *
+     * @param address the address of the supervisor handing over
+     * @param ready true if this channel activated the supervisor role
+     */
+    protected void replyHandover(String address, boolean ready) {
+        enqueueControl(new A3Message(A3Constants.CONTROL_HANDOVER_REPLY, ready + "", new String[]{address}));
+    }
+
+    /**
+     * Called on the successor when the supervisor told the followers to follow it.
+     *
+     * @param supervisorId the address of the supervisor which handed over
+     * @return true if this channel was taking over from it and is now the supervisor
+     */
+    protected boolean completeTakeOver(String supervisorId) {
+        synchronized (this) {
+            if (!supervisorId.equals(takingOverFrom))
+                return false;
+            takingOverFrom = null;
+        }
+        becomeSupervisor();
+        return true;
+    }
+
+    /**
+     * Called on the successor when the supervisor gave the handover up: it goes back to following it.
+     *
+     * @param supervisorId the address of the supervisor
+     */
+    protected void abortTakeOver(String supervisorId) {
+        synchronized (this) {
+            if (!supervisorId.equals(takingOverFrom))
+                return;
+            takingOverFrom = null;
+        }
+        Log.i(TAG, "abortTakeOver(" + supervisorId + ")");
+        supervisorRole.setActive(false);
+        if (hasFollowerRole)
+            activateFollower();
+        else
+            activeRole = null;
+    }
+
+    /**
+     * Called when the successor replied to the handover request. If it is ready this channel deactivates
+     * the supervisor role, forwards the pending messages to the successor and tells the followers to follow
+     * it, otherwise it gives the handover up.
+     *
+     * @param successor the address of the successor
+     * @param ready true if the successor activated the supervisor role
+     */
+    protected void onHandoverReply(String successor, boolean ready) {
+        synchronized (this) {
+            if (!successor.equals(handoverTo) || handoverCompleted)
+                return;
+            if (ready)
+                handoverCompleted = true;
+        }
+        if (!ready) {
+            abortHandover();
+            return;
+        }
+        List<A3Message> pending = supervisorRole.getPendingMessages();
+        deactivateSupervisor();
+        for (A3Message message : pending)
+            forwardToSuccessor(successor, message);
+        forwardHandoverQueue(successor);
+        notifyLeaseRelease(successor);
+        setSupervisorId(successor);
+        if (hasFollowerRole)
+            becomeFollower();
+        else
+            activeRole = null;
+    }
+
+    /**
+     * Forwards the messages kept while the successor got ready, including those received meanwhile,
+     * in the order they were received. Once they are all forwarded, the following ones are forwarded
+     * as they are received.
+     */
+    private void forwardHandoverQueue(String successor) {
+        while (true) {
+            List<A3Message> kept;
+            synchronized (this) {
+                if (handoverQueue.isEmpty()) {
+                    handoverDrained = true;
+                    return;
+                }
+                kept = new ArrayList<>(handoverQueue);
+                handoverQueue.clear();
+            }
+            for (A3Message message : kept)
+                forwardToSuccessor(successor, message);
+        }
+    }
+
+    /**
+     * Gives the running handover up, e.g. because the successor did not reply, and delivers the kept
+     * messages to the supervisor role.
+     */
+    private void abortHandover() {
+        String successor;
+        List<A3Message> kept;
+        synchronized (this) {
+            if (handoverTo == null || handoverCompleted)
+                return;
+            successor = handoverTo;
+            handoverTo = null;
+            kept = new ArrayList<>(handoverQueue);
+            handoverQueue.clear();
+        }
+        Log.i(TAG, "abortHandover(" + successor + ")");
+        enqueueControl(new A3Message(A3Constants.CONTROL_HANDOVER_ABORT, "", new String[]{successor}));
+        for (A3Message message : kept)
+            supervisorRole.handleMessage(message);
+    }
+
+    /**
+     * Called when a supervisor announced itself: the handover to it, if any, is over.
+     *
+     * @param supervisorId the address of the supervisor
+     */
+    protected synchronized void onSupervisorAnnounced(String supervisorId) {
+        if (handoverCompleted && supervisorId.equals(handoverTo)) {
+            handoverTo = null;
+            handoverCompleted = false;
+        }
+    }
+
+    /**
+     * Sends a message for the supervisor to the successor, wrapped in a control message which keeps
+     * its sender: the transport sets the sender of the messages it sends to this channel.
+     * The object is in the form "sender reason object".
+     */
+    private void forwardToSuccessor(String successor, A3Message message) {
+        String sender = message.senderAddress == null || message.senderAddress.isEmpty() ?
+                channelId : message.senderAddress;
+        enqueueControl(new A3Message(A3Constants.CONTROL_HANDOVER_FORWARD,
+                sender + A3Constants.SEPARATOR + message.reason + A3Constants.SEPARATOR + message.object,
+                message.bytes, new String[]{successor}));
+    }
+
+    /**
+     * Called on the successor for each message forwarded by the supervisor handing over, which is
+     * delivered to the supervisor role as sent by its original sender.
+     *
+     * @param supervisorId the address of the supervisor which forwarded the message
+     * @param forward the forwarded message, as built by forwardToSuccessor()
+     */
+    protected void receiveForwarded(String supervisorId, A3Message forward) {
+        synchronized (this) {
+            if (!supervisorId.equals(takingOverFrom) && !isSupervisor())
+                return;
+        }
+        String [] fields = forward.object.split(A3Constants.SEPARATOR, 3);
+        A3Message message = new A3Message(Integer.parseInt(fields[1]), fields.length > 2 ? fields[2] : "",
+                forward.bytes, new String[]{channelId});
+        message.senderAddress = fields[0];
+        supervisorRole.handleMessage(message);
+    }
+
+    /**
+     * While handing over, the application messages for the supervisor are kept for the successor rather
+     * than delivered to the supervisor role, and once it is ready they are forwarded to it until it
+     * announces itself. Broadcasts, messages sent by this channel or by the successor, and messages the
+     * successor receives as well are not kept.
+     *
+     * @return true if the message was kept or forwarded
+     */
+    private boolean keepForSuccessor(A3Message message) {
+        String successor;
+        synchronized (this) {
+            successor = handoverTo;
+            if (successor == null || !isForSupervisorOnly(message, successor))
+                return false;
+            if (!handoverDrained) {
+                handoverQueue.add(message);
+                return true;
+            }
+        }
+        forwardToSuccessor(successor, message);
+        return true;
+    }
+
+    /**
+     * @return true if the message is addressed to this channel but not to the successor, and was sent by another member
+     */
+    private boolean isForSupervisorOnly(A3Message message, String successor) {
+        if (message.senderAddress.equals(channelId) || message.senderAddress.equals(successor))
+            return false;
+        boolean toSupervisor = false;
+        for (String address : message.addresses) {
+            if (address.equals(successor))
+                return false;
+            toSupervisor |= address.equals(channelId);
+        }
+        return toSupervisor;
+    }
+
+    /** The successor this supervisor is handing over to, or null **/
+    private String handoverTo = null;
+    /** True once the successor is ready and is being told to take over, until it announces itself **/
+    private boolean handoverCompleted = false;
+    /** True once the kept messages were forwarded to the successor, after which they are forwarded as received **/
+    private boolean handoverDrained = false;
+    /** The messages for the supervisor received while the successor gets ready **/
+    private final List<A3Message> handoverQueue = new ArrayList<>();
+    /** The supervisor this channel is taking over from, or null **/
+    private String takingOverFrom = null;
+
+    /** The address of this supervisor's backup, or null **/
+    private String backupId = null;
+
+    /** The address of the supervisor this channel is the backup of, or null **/
+    private volatile String standbyFor = null;
+
     /**
      * Called when this channels becomes supervisor. It deactivates the follower
      * role (if it is active) and it activates the supervisor role.
@@ -226,10 +881,15 @@ public abstract class A3GroupChannel extends HandlerThread implements A3GroupCha
         Log.i(TAG, "becomeSupervisor()");
         assert (hasSupervisorRole);
         setSupervisorId(channelId);
+        acquireLease();
+        splitFitness.clear();
+        groupView.clearAuthor();
         if (hasFollowerRole)
             deactivateFollower();
         activateSupervisor();
         notifyNewSupervisor();
+        notifyViewSnapshot(null);
+        updateBackup();
     }
 
     /**
@@ -254,12 +914,16 @@ public abstract class A3GroupChannel extends HandlerThread implements A3GroupCha
     }
 
     private void activateSupervisor(){
+        activateSupervisorRole();
+        supervisor = true;
+    }
+
+    private void activateSupervisorRole(){
         activeRole = supervisorRole;
         if (!supervisorRole.isActive()) {
             supervisorRole.setActive(true);
             new Thread(supervisorRole).start();
         }
-        supervisor = true;
     }
 
     /**
@@ -279,6 +943,7 @@ public abstract class A3GroupChannel extends HandlerThread implements A3GroupCha
         assert (hasSupervisorRole);
         supervisor = false;
         supervisorRole.setActive(false);
+        backupId = null;
     }
 
     /**
@@ -294,6 +959,7 @@ public abstract class A3GroupChannel extends HandlerThread implements A3GroupCha
      */
     protected void clearSupervisorId() {
         supervisorId = null;
+        groupView.clearAuthor();
     }
 
     /** Supervisor election methods **/
@@ -301,8 +967,7 @@ public abstract class A3GroupChannel extends HandlerThread implements A3GroupCha
      * Broadcasts the election of a new supervisor
      */
     private void notifyNewSupervisor() {
-        A3Message m = new A3Message(A3Constants.CONTROL_NEW_SUPERVISOR, groupDescriptor.getSupervisorFitnessFunction() + "");
-        enqueueControl(m);
+        enqueueGossip(A3Constants.CONTROL_NEW_SUPERVISOR, "", null);
     }
 
     /**
@@ -312,9 +977,14 @@ public abstract class A3GroupChannel extends HandlerThread implements A3GroupCha
      */
     protected void notifyCurrentSupervisor(String address) {
         Log.i(TAG, "notifyCurrentSupervisor(" + address + ")");
-        A3Message m = new A3Message(A3Constants.CONTROL_CURRENT_SUPERVISOR, groupDescriptor.getSupervisorFitnessFunction() + "");
-        m.addresses = new String[]{address};
-        enqueueControl(m);
+        enqueueGossip(A3Constants.CONTROL_CURRENT_SUPERVISOR, "", new String[]{address});
+    }
+
+    /**
+     * Broadcasts a heartbeat, which carries the supervisor fitness of this channel
+     */
+    protected void notifyHeartbeat() {
+        enqueueGossip(A3Constants.CONTROL_HEARTBEAT, "", null);
     }
 
     /**
@@ -322,19 +992,162 @@ public abstract class A3GroupChannel extends HandlerThread implements A3GroupCha
      */
     private void querySupervisor() {
         A3Message m = new A3Message(A3Constants.CONTROL_GET_SUPERVISOR, "");
+        supervisorQueryTime = SystemClock.elapsedRealtime();
         enqueueControl(m);
         createSupervisorNotFoundTimer();
     }
 
+    /** Group view synchronization methods **/
+    /**
+     * Sends the supervisor's view, which followers will keep up to date with the following deltas.
+     *
+     * @param address the address of the follower which requested it, or null to broadcast it
+     */
+    protected void notifyViewSnapshot(String address) {
+        A3GroupView.Snapshot view = groupView.getSnapshot();
+        StringBuilder object = new StringBuilder().append(view.getVersion());
+        for (String member : view.getMembers())
+            object.append(A3Constants.SEPARATOR).append(member);
+        A3Message m = new A3Message(A3Constants.CONTROL_VIEW_SNAPSHOT, object.toString());
+        if (address != null)
+            m.addresses = new String[]{address};
+        enqueueControl(m);
+    }
+
+    /**
+     * Broadcasts a change of the supervisor's view, in the form "epoch +joined... -left...".
+     *
+     * @param epoch the epoch of the view after the change
+     * @param joined the members that joined
+     * @param left the members that left
+     */
+    protected void notifyViewDelta(long epoch, List<String> joined, List<String> left) {
+        StringBuilder object = new StringBuilder().append(epoch);
+        for (String member : joined)
+            object.append(A3Constants.SEPARATOR).append(VIEW_DELTA_JOINED).append(member);
+        for (String member : left)
+            object.append(A3Constants.SEPARATOR).append(VIEW_DELTA_LEFT).append(member);
+        enqueueControl(new A3Message(A3Constants.CONTROL_VIEW_DELTA, object.toString()));
+    }
+
+    /**
+     * Broadcasts the epoch of the supervisor's view, so that the followers which missed its last
+     * deltas can ask for a snapshot.
+     */
+    protected void notifyViewEpoch() {
+        enqueueControl(new A3Message(A3Constants.CONTROL_VIEW_EPOCH, groupView.getVersion() + ""));
+    }
+
+    public static final char VIEW_DELTA_JOINED = '+';
+    public static final char VIEW_DELTA_LEFT = '-';
+
+    /**
+     * Asks the supervisor for its view, e.g. because some of its deltas were missed.
+     */
+    protected void requestViewSnapshot() {
+        String supervisorId = getSupervisorId();
+        if (supervisorId != null && !supervisorId.equals(channelId))
+            enqueueControl(new A3Message(A3Constants.CONTROL_GET_VIEW, "", new String[]{supervisorId}));
+    }
+
     /**
      * Creates a Timer event in case no supervisor is found, meaning this node should become the
      * supervisor if it has the role.
      */
     private void createSupervisorNotFoundTimer() {
-        supervisorNotFoundTimer = new Timer(this, SUPERVISOR_NOT_FOUND_EVENT, SUPERVISOR_NOT_FOUND_EVENT_TIMEOUT);
+        supervisorNotFoundTimer = new Timer(this, SUPERVISOR_NOT_FOUND_EVENT,
+                getElectionWait(2, SUPERVISOR_NOT_FOUND_EVENT_MAX_TIMEOUT));
         supervisorNotFoundTimer.start();
     }
 
+    /** Control round-trip time methods **/
+    /**
+     * Called when the supervisor replied to this channel's query, which gives a round-trip time sample.
+     */
+    protected void onSupervisorQueryReply() {
+        if (supervisorQueryTime >= 0) {
+            controlRtt.addSample(SystemClock.elapsedRealtime() - supervisorQueryTime);
+            supervisorQueryTime = -1;
+        }
+    }
+
+    /**
+     * Broadcasts a ping, whose first reply gives a round-trip time sample.
+     */
+    protected void pingGroup() {
+        pingTime = SystemClock.elapsedRealtime();
+        enqueueGossip(A3Constants.CONTROL_PING, "", null);
+    }
+
+    /**
+     * Replies to the ping of another channel of the group.
+     *
+     * @param address the address of the channel which sent the ping
+     */
+    protected void replyPing(String address) {
+        enqueueGossip(A3Constants.CONTROL_PONG, "", new String[]{address});
+    }
+
+    /**
+     * Called when a channel replied to this channel's ping.
+     */
+    protected void onPong() {
+        if (pingTime >= 0) {
+            controlRtt.addSample(SystemClock.elapsedRealtime() - pingTime);
+            pingTime = -1;
+        }
+    }
+
+    /**
+     * The waits of the supervisor election are derived from the control round-trip time of this
+     * channel rather than fixed, so that elections are fast on a quiet network and still safe on
+     * a slow one. A random jitter of up to one timeout keeps the members from acting all together.
+     *
+     * @param timeouts the number of control timeouts to wait
+     * @param ceiling the maximum wait, in milliseconds
+     * @return the time to wait, in milliseconds
+     */
+    protected int getElectionWait(int timeouts, int ceiling) {
+        int timeout = controlRtt.getTimeout();
+        return Math.min(ceiling, timeouts * timeout + random.nextInt(timeout + 1));
+    }
+
+    /**
+     * @return the smoothed control round-trip time of this channel in milliseconds, or -1 if not measured yet
+     */
+    public long getControlRtt() {
+        return controlRtt.getSmoothedRtt();
+    }
+
+    /**
+     * @return the time in milliseconds between the start of the last election and the group becoming
+     * ACTIVE, or -1 if it never became ACTIVE
+     */
+    public long getTimeToActive() {
+        return timeToActive;
+    }
+
+    /**
+     * @return the time the group was found by the discovery, as SystemClock.elapsedRealtime(), if this
+     * channel joined it, or -1 if this channel created it as it wasn't found
+     */
+    public long getGroupFoundTime() {
+        return groupFoundTime;
+    }
+
+    protected void setGroupFoundTime(long groupFoundTime) {
+        this.groupFoundTime = groupFoundTime;
+    }
+
+    /**
+     * @return the time in milliseconds between the connection of this channel and the start of the
+     * first election, i.e. the time to connect to the bus and to create or join the group, or -1 if
+     * the group was never joined
+     */
+    public long getTimeToJoin() {
+        return timeToJoin;
+    }
+
     /**
      * Aborts the current supervisor query timer if it is active
      */
@@ -427,25 +1240,21 @@ public abstract class A3GroupChannel extends HandlerThread implements A3GroupCha
     }
 
     /**
-     * @param nodesToTransfer
+     * Selects nodesToTransfer members other than the supervisor and notifies them to split.
+     * If every candidate reported its integer split fitness, members are selected with probability
+     * proportional to it, otherwise uniformly.
+     *
+     * @param nodesToTransfer the number of members to move to the new group
      */
     protected void notifySplitRandomly(int nodesToTransfer){
-        ArrayList<String> selectedNodes = new ArrayList<>();
-        int numberOfNodes = getGroupView().getNumberOfNodes();
-        String[] splitView = getGroupView().toString()
-                .substring(1, getGroupView().toString().length() - 1)
-                .split(", ");
-        Random randomNumberGenerator = new Random();
-        String tempAddress;
-        if (nodesToTransfer < numberOfNodes) {
-            for (int i = 0; i < nodesToTransfer; i++) {
-                do {
-                    tempAddress = splitView[randomNumberGenerator
-                            .nextInt(numberOfNodes)];
-                } while (tempAddress.equals(getSupervisorId())
-                        || selectedNodes.contains(tempAddress));
-                selectedNodes.add(tempAddress);
-            }
+        A3GroupView.Snapshot view = getGroupView().getSnapshot();
+        String supervisorId = getSupervisorId();
+        if (nodesToTransfer < view.size()) {
+            List<String> selectedNodes;
+            if (hasSplitFitnessOfAll(view, supervisorId))
+                selectedNodes = view.sample(nodesToTransfer, random, supervisorId, splitFitness);
+            else
+                selectedNodes = view.sample(nodesToTransfer, random, supervisorId);
 
             for (String address : selectedNodes)
                 enqueueControl(new A3Message(
@@ -453,6 +1262,46 @@ public abstract class A3GroupChannel extends HandlerThread implements A3GroupCha
         }
     }
 
+    private boolean hasSplitFitnessOfAll(A3GroupView.Snapshot view, String supervisorId) {
+        for (String member : view.getMembers())
+            if (!member.equals(supervisorId) && !splitFitness.containsKey(member))
+                return false;
+        return true;
+    }
+
+    /**
+     * Sends the integer split fitness of this node to the supervisor, to be used when the group is split.
+     * Nothing is sent if the group descriptor does not define it.
+     */
+    protected void notifySplitFitness() {
+        String supervisorId = getSupervisorId();
+        if (supervisorId == null || supervisorId.equals(channelId))
+            return;
+        try {
+            int fitness = groupDescriptor.getIntegerSplitFitnessFunction();
+            enqueueControl(new A3Message(A3Constants.CONTROL_SPLIT_FITNESS, fitness + "", new String[]{supervisorId}));
+        } catch (Exception e) {
+            //The integer split fitness function is not implemented, splits will be uniform
+        }
+    }
+
+    /**
+     * Stores the integer split fitness reported by a member, when this channel is the supervisor.
+     *
+     * @param address the address of the member
+     * @param fitness its integer split fitness
+     */
+    protected void setSplitFitness(String address, int fitness) {
+        splitFitness.put(address, fitness);
+    }
+
+    /**
+     * The integer split fitness reported by each follower to this supervisor
+     **/
+    private final Map<String, Integer> splitFitness = new ConcurrentHashMap<>();
+
+    private final Random random = new Random();
+
     /**
      * Sends a broadcast request for subgroup counter increment. Subgroup counter is used to create
      * new subgroups named after the original group's name with subgroup counter appended
@@ -473,31 +1322,68 @@ public abstract class A3GroupChannel extends HandlerThread implements A3GroupCha
     }
 
     /**
-     * Handles events triggered after a certain amount of time past from a message been sent.
+     * Handles events triggered after a certain amount of time past from a message been sent,
+     * on the control handler thread, as elections and handovers activate roles.
      *
      * @param reason It indicates which timeout fired. The taken action will depend on this.
      */
-    public void handleTimeEvent(int reason, Object object) {
+    public void handleTimeEvent(final int reason, final Object object) {
+        groupControl.execute(new Runnable() {
+            @Override
+            public void run() {
+                handleTimeout(reason, object);
+            }
+        });
+    }
+
+    private void handleTimeout(int reason, Object object) {
         switch (reason) {
             case SUPERVISOR_NOT_FOUND_EVENT:
                 handleSupervisorNotFoundEvent();
                 break;
+            case HANDOVER_TIMEOUT_EVENT:
+                if (object.equals(handoverTo))
+                    abortHandover();
+                break;
             default:
                 break;
         }
     }
 
     private static final int SUPERVISOR_NOT_FOUND_EVENT = 0;
-    private static final int SUPERVISOR_NOT_FOUND_EVENT_TIMEOUT = 2000;
+    private static final int HANDOVER_TIMEOUT_EVENT = 1;
+    private static final int HANDOVER_MAX_TIMEOUT = 5000;
+    private static final int SUPERVISOR_NOT_FOUND_EVENT_MAX_TIMEOUT = 2000;
+
+    private final RttEstimator controlRtt = new RttEstimator(CONTROL_INITIAL_TIMEOUT, CONTROL_MIN_TIMEOUT, CONTROL_MAX_TIMEOUT);
+    private static final int CONTROL_INITIAL_TIMEOUT = 500;
+    private static final int CONTROL_MIN_TIMEOUT = 100;
+    private static final int CONTROL_MAX_TIMEOUT = 1500;
+
+    private volatile long supervisorQueryTime = -1;
+    private volatile long pingTime = -1;
+    private long electionStartTime = -1;
+    private volatile long timeToActive = -1;
+    private long connectTime = -1;
+    private volatile long timeToJoin = -1;
+    private volatile long groupFoundTime = -1;
 
     /**
      * Whenever an existing group without supervisor is joint by this node, it becomes the
-     * supervisor if it has the role for it.
+     * supervisor if it has the role for it. With the gossip election only the best candidate does,
+     * or any candidate after MAX_ELECTION_ROUNDS rounds without a supervisor.
      */
     private void handleSupervisorNotFoundEvent() {
         if (supervisorId == null) {
-            if (hasSupervisorRole)
+            if (!isGossipElection()) {
+                if (hasSupervisorRole)
+                    becomeSupervisor();
+            } else if (isBestCandidate() || (hasSupervisorRole && ++electionRounds >= MAX_ELECTION_ROUNDS)) {
                 becomeSupervisor();
+            } else {
+                //Waits for the best candidate, which could have left meanwhile
+                querySupervisor();
+            }
         }
     }
 
@@ -536,6 +1422,8 @@ public abstract class A3GroupChannel extends HandlerThread implements A3GroupCha
     }
 
     private void checkRoleActivationAndForwardMessage(A3Message message){
+        if(keepForSuccessor(message))
+            return;
         if(activeRole != null)
             activeRole.handleMessage(message);
     }
@@ -783,6 +1671,17 @@ public abstract class A3GroupChannel extends HandlerThread implements A3GroupCha
         }
     }
 
+    /**
+     * Drops all the messages waiting in the outbound.
+     *
+     * @return the number of messages dropped
+     */
+    public synchronized int clearOutbound() {
+        int dropped = mOutbound.size();
+        mOutbound.clear();
+        return dropped;
+    }
+
     /**
      * @return true if this outbound is empty
      */
@@ -824,16 +1723,91 @@ public abstract class A3GroupChannel extends HandlerThread implements A3GroupCha
     }
 
     public void setGroupState(A3GroupDescriptor.A3GroupState state) {
-        if(!this.groupState.equals(state))
+        if(!this.groupState.equals(state)) {
+            updateTimeToActive(state);
             handleEvent(A3GroupEvent.A3GroupEventType.GROUP_STATE_CHANGED, state);
+        }
         this.groupState = state;
         synchronized (this) {
             this.notifyAll();
         }
+        completeStateWaiters(state);
     }
 
     private A3GroupDescriptor.A3GroupState groupState = A3GroupDescriptor.A3GroupState.IDLE;
 
+    /**
+     * Waits for the group to reach a state without blocking, e.g. for it to be ACTIVE after connecting.
+     * The states after the requested one, e.g. STACK after ACTIVE, count as reached.
+     *
+     * @param state the state to wait for
+     * @return completed with the state of the group when it reaches "state", or failed with an
+     * A3GroupDisconnectedException if the channel disconnects before
+     */
+    public Promise<A3GroupDescriptor.A3GroupState> awaitState(A3GroupDescriptor.A3GroupState state) {
+        Promise<A3GroupDescriptor.A3GroupState> promise = new Promise<>();
+        synchronized (stateWaiters) {
+            if (groupState.compareTo(state) < 0) {
+                stateWaiters.add(new StateWaiter(state, promise));
+                return promise;
+            }
+        }
+        promise.complete(groupState);
+        return promise;
+    }
+
+    private void completeStateWaiters(A3GroupDescriptor.A3GroupState state) {
+        List<StateWaiter> reached = new ArrayList<>();
+        synchronized (stateWaiters) {
+            Iterator<StateWaiter> iterator = stateWaiters.iterator();
+            while (iterator.hasNext()) {
+                StateWaiter waiter = iterator.next();
+                if (state.compareTo(waiter.state) >= 0) {
+                    reached.add(waiter);
+                    iterator.remove();
+                }
+            }
+        }
+        for (StateWaiter waiter : reached)
+            waiter.promise.complete(state);
+    }
+
+    private void failStateWaiters(Exception e) {
+        List<StateWaiter> waiters;
+        synchronized (stateWaiters) {
+            waiters = new ArrayList<>(stateWaiters);
+            stateWaiters.clear();
+        }
+        for (StateWaiter waiter : waiters)
+            waiter.promise.fail(e);
+    }
+
+    private static class StateWaiter {
+
+        final A3GroupDescriptor.A3GroupState state;
+        final Promise<A3GroupDescriptor.A3GroupState> promise;
+
+        StateWaiter(A3GroupDescriptor.A3GroupState state, Promise<A3GroupDescriptor.A3GroupState> promise) {
+            this.state = state;
+            this.promise = promise;
+        }
+    }
+
+    /**The promises of awaitState(A3GroupState) still waiting for their state.*/
+    private final List<StateWaiter> stateWaiters = new ArrayList<>();
+
+    private void updateTimeToActive(A3GroupDescriptor.A3GroupState state) {
+        if (state.equals(A3GroupDescriptor.A3GroupState.ELECTION)) {
+            electionStartTime = SystemClock.elapsedRealtime();
+            if (timeToJoin < 0 && connectTime >= 0)
+                timeToJoin = electionStartTime - connectTime;
+        } else if (state.equals(A3GroupDescriptor.A3GroupState.ACTIVE) && electionStartTime >= 0) {
+            timeToActive = SystemClock.elapsedRealtime() - electionStartTime;
+            electionStartTime = -1;
+            Log.i(TAG, "Time to ACTIVE: " + timeToActive + "ms (control RTT " + getControlRtt() + "ms)");
+        }
+    }
+
 
     public static final int BROADCAST_MSG = 0;
     public static final int UNICAST_MSG = 1;
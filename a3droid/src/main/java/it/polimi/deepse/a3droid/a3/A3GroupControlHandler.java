@@ -2,18 +2,27 @@ package it.polimi.deepse.a3droid.a3;
 
 import android.os.Handler;
 import android.os.HandlerThread;
+import android.os.Looper;
 import android.os.Message;
+import android.os.SystemClock;
 import android.util.Log;
 
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
 import it.polimi.deepse.a3droid.a3.events.A3GroupEvent;
 import it.polimi.deepse.a3droid.a3.exceptions.A3ChannelNotFoundException;
 import it.polimi.deepse.a3droid.a3.exceptions.A3InvalidOperationParameters;
 import it.polimi.deepse.a3droid.a3.exceptions.A3InvalidOperationRole;
 import it.polimi.deepse.a3droid.a3.exceptions.A3NoGroupDescriptionException;
 import it.polimi.deepse.a3droid.pattern.*;
+import it.polimi.deepse.a3droid.utility.PhiAccrualFailureDetector;
 import it.polimi.deepse.a3droid.utility.RandomWait;
 
-public class A3GroupControlHandler extends HandlerThread implements TimerInterface{
+public class A3GroupControlHandler extends HandlerThread implements TimerInterface, Executor{
 
     protected String TAG;
 
@@ -26,7 +35,51 @@ public class A3GroupControlHandler extends HandlerThread implements TimerInterfa
         TAG = "A3GroupControlHandler#" + channel.getGroupName();
         this.topologyControl = topologyControl;
         this.channel = channel;
-        start();
+        Looper sharedLooper = EventLoopPool.getLooper(channel.getGroupName());
+        shared = sharedLooper != null;
+        if (shared)
+            prepareHandler(sharedLooper);
+        else
+            start();
+    }
+
+    /** True if this handler runs on the node's shared event loops rather than on its own thread **/
+    private final boolean shared;
+
+    /** Set when a handler on the shared event loops quits, as the loop itself keeps running **/
+    private boolean quit = false;
+
+    /**
+     * On its own thread it quits after the pending messages, on the shared event loops it removes its
+     * pending delayed tasks and ignores the following messages.
+     */
+    @Override
+    public boolean quitSafely() {
+        if (!shared)
+            return super.quitSafely();
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                quit = true;
+                mHandler.removeCallbacksAndMessages(null);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Runs a task on this handler's thread, e.g. the work of a timeout of the channel, so that it doesn't run
+     * on the node's timer service thread. Tasks are dropped once this handler has quit.
+     */
+    @Override
+    public void execute(final Runnable task) {
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (!quit)
+                    task.run();
+            }
+        });
     }
 
     public Message obtainMessage() {
@@ -40,8 +93,11 @@ public class A3GroupControlHandler extends HandlerThread implements TimerInterfa
     @Override
     protected void onLooperPrepared() {
         super.onLooperPrepared();
+        prepareHandler(getLooper());
+    }
 
-        mHandler = new Handler(getLooper()) {
+    private void prepareHandler(Looper looper) {
+        mHandler = new Handler(looper) {
             /**
              * There are system messages whose management doesn't depend on the application:
              * they are filtered and managed here.
@@ -49,6 +105,8 @@ public class A3GroupControlHandler extends HandlerThread implements TimerInterfa
              */
             @Override
             public void handleMessage(Message msg) {
+                if (quit)
+                    return;
 
                 A3Message message = (A3Message) msg.obj;
                 switch (message.reason){
@@ -65,6 +123,28 @@ public class A3GroupControlHandler extends HandlerThread implements TimerInterfa
                     case A3Constants.CONTROL_NO_SUPERVISOR:
                         handleNoSupervisorNotification(message);
                         break;
+                    case A3Constants.CONTROL_HEARTBEAT:
+                        handleHeartbeat(message);
+                        break;
+                    case A3Constants.CONTROL_PING:
+                        channel.setCandidateFitness(message.senderAddress, message.object);
+                        if(!message.senderAddress.equals(channel.getChannelId()))
+                            channel.replyPing(message.senderAddress);
+                        break;
+                    case A3Constants.CONTROL_PONG:
+                        channel.setCandidateFitness(message.senderAddress, message.object);
+                        channel.onPong();
+                        break;
+                    case A3Constants.CONTROL_LEASE_RENEW:
+                        handleLeaseRenewal(message);
+                        break;
+                    case A3Constants.CONTROL_LEASE_ACK:
+                        if(channel.isSupervisor())
+                            channel.onLeaseAck();
+                        break;
+                    case A3Constants.CONTROL_LEASE_RELEASE:
+                        handleLeaseRelease(message);
+                        break;
                     /** TCO operations **/
                     case A3Constants.CONTROL_STACK_REQUEST:
                         handleStackRequest(message);
@@ -97,16 +177,240 @@ public class A3GroupControlHandler extends HandlerThread implements TimerInterfa
                     case A3Constants.CONTROL_SPLIT:
                         handleSplitNotification(message);
                         break;
+                    case A3Constants.CONTROL_SPLIT_FITNESS:
+                        handleSplitFitness(message);
+                        break;
+                    /** Group view synchronization **/
+                    case A3Constants.CONTROL_GET_VIEW:
+                        handleGetViewQuery(message);
+                        break;
+                    case A3Constants.CONTROL_VIEW_SNAPSHOT:
+                        handleViewSnapshot(message);
+                        break;
+                    case A3Constants.CONTROL_VIEW_DELTA:
+                        handleViewDelta(message);
+                        break;
+                    case A3Constants.CONTROL_VIEW_EPOCH:
+                        handleViewEpoch(message);
+                        break;
+                    /** Hot standby **/
+                    case A3Constants.CONTROL_CANDIDATE_FITNESS:
+                        handleCandidateFitness(message);
+                        break;
+                    case A3Constants.CONTROL_BACKUP_ASSIGN:
+                        channel.becomeBackup(message.senderAddress, message.object);
+                        break;
+                    case A3Constants.CONTROL_BACKUP_REVOKE:
+                        channel.clearBackup(message.senderAddress);
+                        break;
+                    case A3Constants.CONTROL_STATE_DELTA:
+                        channel.applyStateDelta(message.senderAddress, message.object);
+                        break;
+                    /** Supervisor handover **/
+                    case A3Constants.CONTROL_HANDOVER_REQUEST:
+                        channel.replyHandover(message.senderAddress,
+                                channel.prepareTakeOver(message.senderAddress, message.object));
+                        break;
+                    case A3Constants.CONTROL_HANDOVER_REPLY:
+                        channel.onHandoverReply(message.senderAddress, Boolean.valueOf(message.object));
+                        break;
+                    case A3Constants.CONTROL_HANDOVER_ABORT:
+                        channel.abortTakeOver(message.senderAddress);
+                        break;
+                    case A3Constants.CONTROL_HANDOVER_FORWARD:
+                        channel.receiveForwarded(message.senderAddress, message);
+                        break;
                     default:
                         break;
                 }
             }
         };
+        scheduleHeartbeat();
+        scheduleLeaseRenewal();
+        scheduleViewSync();
+    }
+
+    /** Supervisor heartbeat **/
+    /**
+     * Every heartbeat period, the supervisor sends a heartbeat and the followers check whether the
+     * supervisor they are receiving heartbeats from is suspected. Both run on this handler's thread.
+     * With the gossip election, the other candidates send a heartbeat too, to keep their fitness known.
+     */
+    private final Runnable heartbeatTask = new Runnable() {
+        @Override
+        public void run() {
+            if (channel.isSupervisor())
+                channel.notifyHeartbeat();
+            else {
+                checkSupervisorHeartbeat();
+                if (channel.isGossipElection() && channel.hasSupervisorRole())
+                    channel.notifyHeartbeat();
+            }
+            scheduleHeartbeat();
+        }
+    };
+
+    private void scheduleHeartbeat() {
+        int period = getHeartbeatPeriod();
+        if (period > 0)
+            mHandler.postDelayed(heartbeatTask, period);
+    }
+
+    private void handleHeartbeat(A3Message message) {
+        channel.setCandidateFitness(message.senderAddress, message.object);
+        if (channel.isSupervisor() || !message.senderAddress.equals(channel.getSupervisorId()))
+            return;
+        if (!message.senderAddress.equals(monitoredSupervisorId)) {
+            monitoredSupervisorId = message.senderAddress;
+            supervisorFailureDetector = new PhiAccrualFailureDetector(getHeartbeatPeriod());
+        }
+        supervisorFailureDetector.heartbeat(SystemClock.elapsedRealtime());
+    }
+
+    /**
+     * Raises SUPERVISOR_LEFT if the monitored supervisor is still the current one and its suspicion
+     * level is over the group's threshold. Monitoring restarts with the next supervisor heartbeat.
+     */
+    private void checkSupervisorHeartbeat() {
+        if (supervisorFailureDetector == null || !monitoredSupervisorId.equals(channel.getSupervisorId()))
+            return;
+        double phi = supervisorFailureDetector.phi(SystemClock.elapsedRealtime());
+        if (phi > getSuspicionThreshold()) {
+            Log.i(TAG, "Supervisor " + monitoredSupervisorId + " suspected (phi=" + phi + ")");
+            supervisorFailureDetector = null;
+            monitoredSupervisorId = null;
+            channel.handleEvent(A3GroupEvent.A3GroupEventType.SUPERVISOR_LEFT);
+        }
     }
 
+    private int getHeartbeatPeriod() {
+        try {
+            return channel.getGroupDescriptor().getHeartbeatPeriod();
+        } catch (A3NoGroupDescriptionException e) {
+            return 0;
+        }
+    }
+
+    private double getSuspicionThreshold() {
+        try {
+            return channel.getGroupDescriptor().getSuspicionThreshold();
+        } catch (A3NoGroupDescriptionException e) {
+            return Double.MAX_VALUE;
+        }
+    }
+
+    /** Supervisor lease **/
+    /**
+     * Every third of the lease duration, the supervisor renews its lease, or steps down if none of
+     * its followers acknowledged it for a whole lease. It runs on this handler's thread.
+     */
+    private final Runnable leaseTask = new Runnable() {
+        @Override
+        public void run() {
+            if (channel.isSupervisor()) {
+                if (channel.isLeaseLost()) {
+                    Log.i(TAG, "Supervisor lease lost");
+                    channel.notifyLeaseRelease("");
+                    channel.deactivateSupervisor();
+                    channel.handleEvent(A3GroupEvent.A3GroupEventType.SUPERVISOR_LEFT);
+                } else
+                    channel.notifyLeaseRenewal();
+            }
+            scheduleLeaseRenewal();
+        }
+    };
+
+    private void scheduleLeaseRenewal() {
+        int lease = channel.getSupervisorLease();
+        if (lease > 0)
+            mHandler.postDelayed(leaseTask, lease / 3);
+    }
+
+    /** Group view synchronization **/
+    /**
+     * Every view sync period, the supervisor broadcasts the epoch of its view. It runs on this handler's thread.
+     */
+    private final Runnable viewSyncTask = new Runnable() {
+        @Override
+        public void run() {
+            if (channel.isSupervisor())
+                channel.notifyViewEpoch();
+            scheduleViewSync();
+        }
+    };
+
+    private void scheduleViewSync() {
+        int period = channel.getViewSyncPeriod();
+        if (period > 0)
+            mHandler.postDelayed(viewSyncTask, period);
+    }
+
+    /**
+     * A follower acknowledges the renewal and follows the renewing supervisor if the lease of its
+     * previous one expired. A supervisor receiving the renewal of another one hands over to it if it
+     * ranks lower, otherwise it keeps the role and the other supervisor will hand over.
+     */
+    private void handleLeaseRenewal(A3Message message) {
+        if (message.senderAddress.equals(channel.getChannelId()))
+            return;
+        String [] renewal = message.object.split(A3Constants.SEPARATOR);
+        int lease = Integer.parseInt(renewal[0]);
+        int supervisorFF = Integer.parseInt(renewal[1]);
+        if (channel.isSupervisor()) {
+            if (A3GroupChannel.ranksAbove(message.senderAddress, supervisorFF,
+                    channel.getChannelId(), channel.getGossipedFitness()))
+                handOver(message.senderAddress, lease);
+        } else if (channel.renewLease(message.senderAddress, lease)) {
+            channel.notifyLeaseAck(message.senderAddress);
+            if (!message.senderAddress.equals(channel.getSupervisorId()))
+                followSupervisor(message.senderAddress);
+        }
+    }
+
+    private void handleLeaseRelease(A3Message message) {
+        channel.releaseLease(message.senderAddress);
+        String successor = message.object;
+        if (successor.equals(channel.getChannelId()) && channel.completeTakeOver(message.senderAddress))
+            return;
+        if (!successor.isEmpty() && !channel.isSupervisor() && channel.acceptsSupervisor(successor) &&
+                !successor.equals(channel.getSupervisorId()))
+            followSupervisor(successor);
+    }
+
+    /**
+     * Gives the role up to a higher ranked supervisor, telling the followers to follow it.
+     */
+    private void handOver(String successor, int lease) {
+        Log.i(TAG, "handOver(" + successor + ")");
+        channel.notifyLeaseRelease(successor);
+        channel.deactivateSupervisor();
+        channel.renewLease(successor, lease);
+        channel.notifyLeaseAck(successor);
+        followSupervisor(successor);
+    }
+
+    private void followSupervisor(String supervisorId) {
+        channel.clearSupervisorQueryTimer();
+        channel.setSupervisorId(supervisorId);
+        if (channel.hasFollowerRole())
+            channel.becomeFollower();
+        channel.handleEvent(A3GroupEvent.A3GroupEventType.SUPERVISOR_ELECTED, supervisorId);
+        channel.requestViewSnapshot();
+    }
+
+    /** The failure detector of the supervisor this follower receives heartbeats from **/
+    private PhiAccrualFailureDetector supervisorFailureDetector = null;
+    private String monitoredSupervisorId = null;
+
     private void handleNewSupervisorNotification(A3Message message) {
         Log.i(TAG, "handleNewSupervisorNotification(" + message + ")");
+        if (!channel.acceptsSupervisor(message.senderAddress)) {
+            //Another supervisor holds a valid lease: the two supervisors will meet through their renewals
+            Log.i(TAG, "Supervisor " + message.senderAddress + " ignored, the lease of the current one is valid");
+            return;
+        }
         channel.clearSupervisorQueryTimer();
+        channel.onSupervisorAnnounced(message.senderAddress);
         channel.setSupervisorId(message.senderAddress);
         A3GroupDescriptor groupDescriptor = null;
         try {
@@ -128,11 +432,15 @@ public class A3GroupControlHandler extends HandlerThread implements TimerInterfa
 
     private void processNewSupervisorNotification(A3Message message, A3GroupDescriptor groupDescriptor) {
         float supervisorFF = Float.parseFloat(message.object);
-        if(channel.hasSupervisorRole()){
+        if(channel.hasSupervisorRole() && groupDescriptor.isGossipElection()){
+            resolveSupervisorConflict(groupDescriptor, message.senderAddress, (int) supervisorFF);
+        }else if(channel.hasSupervisorRole()){
             compareNewSupervisorFF(groupDescriptor, supervisorFF);
         }else if(channel.hasFollowerRole()) {
             channel.becomeFollower();
         }
+        channel.notifySplitFitness();
+        channel.notifyCandidateFitness();
     }
 
     private void compareNewSupervisorFF(A3GroupDescriptor groupDescriptor, float supervisorFF) {
@@ -149,9 +457,32 @@ public class A3GroupControlHandler extends HandlerThread implements TimerInterfa
         }
     }
 
+    /**
+     * With the gossip election a candidate never challenges an elected supervisor, even if it is
+     * fitter, so supervisor roles are not activated and deactivated as members join. Only when two
+     * candidates claimed the role at the same time the lower ranked one steps down, and as both
+     * rank them the same way exactly one of them keeps it.
+     */
+    private void resolveSupervisorConflict(A3GroupDescriptor groupDescriptor, String supervisorId, int supervisorFF) {
+        if (channel.isSupervisor() && A3GroupChannel.ranksAbove(
+                channel.getChannelId(), channel.getGossipedFitness(), supervisorId, supervisorFF)) {
+            channel.becomeSupervisor();
+        }
+        else{
+            if(channel.hasFollowerRole()) {
+                channel.becomeFollower();
+            }
+            else if(channel.isSupervisor()) {
+                channel.deactivateSupervisor();
+            }
+        }
+    }
+
     private void handleCurrentSupervisorReply(A3Message message){
         Log.i(TAG, "handleCurrentSupervisorReply(" + message + ")");
+        channel.onSupervisorQueryReply();
         handleNewSupervisorNotification(message);
+        channel.requestViewSnapshot();
     }
 
     private void handleNoSupervisorNotification(A3Message message){
@@ -164,6 +495,50 @@ public class A3GroupControlHandler extends HandlerThread implements TimerInterfa
             channel.notifyCurrentSupervisor(message.senderAddress);
     }
 
+    private void handleGetViewQuery(A3Message message){
+        if(channel.isSupervisor())
+            channel.notifyViewSnapshot(message.senderAddress);
+    }
+
+    private void handleViewSnapshot(A3Message message){
+        if(!isFromSupervisor(message))
+            return;
+        String [] snapshot = message.object.split(A3Constants.SEPARATOR);
+        List<String> members = Arrays.asList(snapshot).subList(1, snapshot.length);
+        channel.getGroupView().applySnapshot(message.senderAddress, Long.parseLong(snapshot[0]), members);
+    }
+
+    private void handleViewDelta(A3Message message){
+        if(!isFromSupervisor(message))
+            return;
+        String [] delta = message.object.split(A3Constants.SEPARATOR);
+        Map<String, Boolean> changes = new LinkedHashMap<>();
+        for (int i = 1; i < delta.length; i++)
+            changes.put(delta[i].substring(1), delta[i].charAt(0) == A3GroupChannel.VIEW_DELTA_JOINED);
+        if(!channel.getGroupView().applyDelta(message.senderAddress, Long.parseLong(delta[0]), changes))
+            channel.requestViewSnapshot();
+    }
+
+    private void handleViewEpoch(A3Message message){
+        if(isFromSupervisor(message) &&
+                channel.getGroupView().isBehind(message.senderAddress, Long.parseLong(message.object)))
+            channel.requestViewSnapshot();
+    }
+
+    private void handleCandidateFitness(A3Message message){
+        if(!channel.isSupervisor())
+            return;
+        channel.setCandidateFitness(message.senderAddress, message.object);
+        channel.updateBackup();
+    }
+
+    /**
+     * @return true if the message was sent by the current supervisor and this channel is not the supervisor
+     */
+    private boolean isFromSupervisor(A3Message message){
+        return !channel.isSupervisor() && message.senderAddress.equals(channel.getSupervisorId());
+    }
+
     private void handleStackRequest(A3Message message){
         assert channel.isSupervisor();//TODO things may change.. we should verify and perform some behavior if it is false
         String parentGroupName = message.object;
@@ -269,6 +644,16 @@ public class A3GroupControlHandler extends HandlerThread implements TimerInterfa
         new Timer(this, WAIT_AND_SPLIT_EVENT, randomWait.next(WAIT_AND_SPLIT_FIXED_TIME, WAIT_AND_SPLIT_RANDOM_TIME)).start();
     }
 
+    private void handleSplitFitness(A3Message message){
+        if(channel.isSupervisor()) {
+            try {
+                channel.setSplitFitness(message.senderAddress, Integer.parseInt(message.object));
+            } catch (NumberFormatException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
     private static final int WAIT_AND_SPLIT_FIXED_TIME = 0;
     private static final int WAIT_AND_SPLIT_RANDOM_TIME = 1000;
 
@@ -289,13 +674,27 @@ public class A3GroupControlHandler extends HandlerThread implements TimerInterfa
         }
     }
 
-    public void handleTimeEvent(int reason, Object object) {
+    /**
+     * The timers fire on the node's timer service thread, which must not block, so merges and splits
+     * are performed on this handler's thread.
+     */
+    public void handleTimeEvent(int reason, final Object object) {
         switch (reason) {
             case WAIT_AND_MERGE_EVENT:
-                handleDelayedMerge((String) object);
+                execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        handleDelayedMerge((String) object);
+                    }
+                });
                 break;
             case WAIT_AND_SPLIT_EVENT:
-                handleDelayedSplit();
+                execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        handleDelayedSplit();
+                    }
+                });
                 break;
             default:
                 break;
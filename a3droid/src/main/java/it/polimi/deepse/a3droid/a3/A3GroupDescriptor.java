@@ -50,6 +50,69 @@ public abstract class A3GroupDescriptor {
 
 	public abstract int getSupervisorFitnessFunction();
 
+	/**To override in order to enable the heartbeat the supervisor sends to the followers,
+	 * which lets them detect its failure before the bus does.
+	 *
+	 * @return The period in milliseconds of the supervisor heartbeat, 0 to disable it (default implementation).
+	 */
+	public int getHeartbeatPeriod() {
+		return 0;
+	}
+
+	/**To override in order to tune how fast a silent supervisor is considered left.
+	 * The supervisor is suspected when the probability that its next heartbeat is just late
+	 * falls below 10^-threshold, given the inter-arrival times observed so far.
+	 *
+	 * @return The suspicion threshold (phi), 8 by default.
+	 */
+	public double getSuspicionThreshold() {
+		return 8.0;
+	}
+
+	/**To override in order to tune how often the supervisor broadcasts the epoch of its view.
+	 * A follower only notices a missed delta of the view when a later one arrives, so the epoch lets
+	 * the followers which missed the last deltas ask for a snapshot of the view.
+	 *
+	 * @return The period in milliseconds of the view epoch broadcast, 0 to disable it. 5000 by default.
+	 */
+	public int getViewSyncPeriod() {
+		return 5000;
+	}
+
+	/**To override in order to bound how long a node is supervisor without hearing from its followers.
+	 * The supervisor renews its lease by broadcasting it every third of its duration, and the followers
+	 * acknowledge it. While a lease is valid its followers ignore other supervisors, until it expires or
+	 * the supervisor hands over explicitly, and a supervisor whose lease was not acknowledged for a whole
+	 * lease steps down. When two supervisors meet, e.g. after a partition, the lower ranked one hands over.
+	 *
+	 * @return The duration in milliseconds of the supervisor lease, 0 to disable it (default implementation).
+	 */
+	public int getSupervisorLease() {
+		return 0;
+	}
+
+	/**To override in order to elect the supervisor in a single round instead of by query and announcement.
+	 * Members that can be supervisors piggy-back their supervisor fitness on the join ping and on their
+	 * heartbeats, so every member knows the candidates and their fitness: when no supervisor is found,
+	 * only the best candidate (highest fitness, then lowest address) takes the role, and a supervisor is
+	 * never replaced by a fitter member which joins later.
+	 *
+	 * @return true to enable the gossip election, false otherwise (default implementation).
+	 */
+	public boolean isGossipElection() {
+		return false;
+	}
+
+	/**To override in order to keep a backup supervisor, which takes over as soon as the supervisor leaves.
+	 * The supervisor designates as backup the fittest member after itself and sends it its role's state
+	 * and every change of it (see A3SupervisorRole), so no election is needed and no state is lost.
+	 *
+	 * @return true to enable the hot standby, false otherwise (default implementation).
+	 */
+	public boolean isHotStandby() {
+		return false;
+	}
+
 	/**
 	 * Create the string representation of the type GroupInfo.
 	 * The obtained string is like "name supervisorRoleId followerRoleId".
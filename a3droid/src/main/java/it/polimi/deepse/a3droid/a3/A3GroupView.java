@@ -1,111 +1,411 @@
 package it.polimi.deepse.a3droid.a3;
 
 import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
 
 import it.polimi.deepse.a3droid.a3.events.A3GroupEvent;
 
 /**
- * TODO
+ * The members of a group, as seen by this node's channel.
+ * The view is kept as an immutable, versioned Snapshot which is replaced as a whole when a member
+ * joins or leaves. Updates are serialized among themselves, while readers only read the current
+ * snapshot and never wait for them. Callers that need several consistent reads (e.g. the size and
+ * the members) should take one snapshot and read it, and can compare versions to detect changes.
+ *
+ * The supervisor builds its view from the session callbacks and broadcasts each change as a delta
+ * numbered with the epoch (version) of its view. Once a follower received a full snapshot of the
+ * supervisor's view it only applies those deltas, so that all the members share the same view, and
+ * it asks for a new snapshot when it misses an epoch: either a later delta arrives, or the supervisor
+ * periodically broadcasts the epoch of its view and the follower is behind it.
  */
 public class A3GroupView{
 
+	/**An immutable state of the group view.*/
+	public static class Snapshot {
+
+		/**The empty view, with version 0.*/
+		static final Snapshot EMPTY = new Snapshot(0, new ArrayList<String>());
+
+		/**Incremented each time the members of the view change.*/
+		private final long version;
+
+		/**The group members, in the order in which they joined.*/
+		private final List<String> members;
+
+		/**The position of each member in members, for constant time membership checks.*/
+		private final Map<String, Integer> memberIndex;
+
+		private Snapshot(long version, List<String> members) {
+			this.version = version;
+			this.members = Collections.unmodifiableList(members);
+			this.memberIndex = new HashMap<>(members.size() * 2);
+			for (int i = 0; i < members.size(); i++)
+				memberIndex.put(members.get(i), i);
+		}
+
+		/**
+		 * @return the version of this snapshot, greater than that of any previous snapshot of the same view.
+		 */
+		public long getVersion() {
+			return version;
+		}
+
+		/**
+		 * @return the unmodifiable list of the group members.
+		 */
+		public List<String> getMembers() {
+			return members;
+		}
+
+		/**
+		 * @param index the position of the member, between 0 and size() - 1
+		 * @return the address of the member at the given position.
+		 */
+		public String getMember(int index) {
+			return members.get(index);
+		}
+
+		public int size() {
+			return members.size();
+		}
+
+		public boolean isEmpty() {
+			return members.isEmpty();
+		}
+
+		public boolean contains(String address) {
+			return memberIndex.containsKey(address);
+		}
+
+		/**
+		 * Uniformly samples members without replacement, with a partial Fisher-Yates shuffle.
+		 * Only the swapped positions are recorded, so it takes O(count) time whatever the group size.
+		 * @param count the number of members to select
+		 * @param random the source of randomness
+		 * @param excluded a member that must not be selected (e.g. the supervisor), or null
+		 * @return count distinct members, or all the members but the excluded one if there are fewer
+		 */
+		public List<String> sample(int count, Random random, String excluded) {
+			Map<Integer, Integer> swapped = new HashMap<>();
+			int available = members.size();
+			Integer excludedIndex = excluded != null ? memberIndex.get(excluded) : null;
+			if (excludedIndex != null) {
+				available--;
+				swapped.put(excludedIndex, available);
+			}
+			count = Math.min(count, available);
+
+			List<String> selected = new ArrayList<>(count);
+			for (int i = 0; i < count; i++) {
+				int j = i + random.nextInt(available - i);
+				int picked = positionAt(swapped, j);
+				swapped.put(j, positionAt(swapped, i));
+				selected.add(members.get(picked));
+			}
+			return selected;
+		}
+
+		private static int positionAt(Map<Integer, Integer> swapped, int index) {
+			Integer position = swapped.get(index);
+			return position != null ? position : index;
+		}
+
+		/**
+		 * Samples members without replacement with probability proportional to their weight,
+		 * using one random key per member (Efraimidis-Spirakis) and keeping the count largest keys.
+		 * Members with no positive weight are only selected when there are not enough other members.
+		 * @param count the number of members to select
+		 * @param random the source of randomness
+		 * @param excluded a member that must not be selected (e.g. the supervisor), or null
+		 * @param weights the weight of each member; members without a weight count as weight 0
+		 * @return count distinct members, or all the members but the excluded one if there are fewer
+		 */
+		public List<String> sample(int count, Random random, String excluded, Map<String, Integer> weights) {
+			PriorityQueue<WeightedMember> largest = new PriorityQueue<>(Math.max(1, count), new Comparator<WeightedMember>() {
+				@Override
+				public int compare(WeightedMember a, WeightedMember b) {
+					return Double.compare(a.key, b.key);
+				}
+			});
+			if (count > 0) {
+				for (String member : members) {
+					if (member.equals(excluded))
+						continue;
+					Integer weight = weights.get(member);
+					double key = weight != null && weight > 0 ?
+							Math.pow(random.nextDouble(), 1.0 / weight) : -random.nextDouble();
+					if (largest.size() < count) {
+						largest.add(new WeightedMember(member, key));
+					} else if (largest.peek().key < key) {
+						largest.poll();
+						largest.add(new WeightedMember(member, key));
+					}
+				}
+			}
+
+			List<String> selected = new ArrayList<>(largest.size());
+			for (WeightedMember weightedMember : largest)
+				selected.add(weightedMember.member);
+			return selected;
+		}
+
+		private static class WeightedMember {
+			final String member;
+			final double key;
+
+			WeightedMember(String member, double key) {
+				this.member = member;
+				this.key = key;
+			}
+		}
+
+		/**
+		 * Applies joins and leaves to the members of this snapshot.
+		 * @param changes for each member, true if it joined or false if it left, in the order of the events
+		 * @param joined filled with the members actually added
+		 * @param left filled with the members actually removed
+		 * @return a snapshot with the changes applied, or this snapshot if none of them changes the members.
+		 */
+		Snapshot apply(Map<String, Boolean> changes, List<String> joined, List<String> left) {
+			LinkedHashSet<String> newMembers = new LinkedHashSet<>(members);
+			for (Map.Entry<String, Boolean> change : changes.entrySet()) {
+				String memberName = change.getKey();
+				if (change.getValue()) {
+					if (newMembers.add(memberName))
+						joined.add(memberName);
+				} else if (newMembers.remove(memberName)) {
+					left.add(memberName);
+				}
+			}
+			if (joined.isEmpty() && left.isEmpty())
+				return this;
+			return new Snapshot(version + 1, new ArrayList<>(newMembers));
+		}
+
+		/**
+		 * @return a snapshot with the given members, in the given order.
+		 */
+		Snapshot replace(List<String> newMembers) {
+			return new Snapshot(version + 1, new ArrayList<>(new LinkedHashSet<>(newMembers)));
+		}
+
+		/**
+		 * @return The string representation of the list of the group members, in the form "[member1, member2, ...]".
+		 */
+		@Override
+		public String toString() {
+			return members.toString();
+		}
+	}
+
 	/**The Service on which this View resides.*/
 	private A3GroupChannel channel;
 
-	/**The list of the channel that are currently part of the group.*/
-	private Set<String> groupMembers;
+	/**The current state of the group view, replaced on each change.*/
+	private volatile Snapshot snapshot;
 
-	/**The list of the group members that will substitute "groupMembers" after a groupView update.*/
-	private ArrayList<String> temporaryView;
+	/**The supervisor whose view this view mirrors, or null while it is built from the session callbacks.*/
+	private String author;
 
-	/**Indicates if a groupView update is ongoing or not.*/
-	private boolean temporaryViewIsActive;
+	/**The epoch of the supervisor's view which this view mirrors.*/
+	private long authorEpoch;
 
 	/**The Service on which this View resides
 	 * @param channel this groupView's channel
 	 */
 	public A3GroupView(A3GroupChannel channel) {
 		this.channel = channel;
-		groupMembers = new HashSet<String>();
-		temporaryViewIsActive = false;
+		snapshot = Snapshot.EMPTY;
 	}
 
 	/**
-	 * It adds the channel "memberName" to the group members' list, because it joined the group.
-	 * If a groupView update is ongoing, the channel's address is added to the temporary groupView too.
-	 * If the channel is the first channel joining the group, it is the new supervisor
-	 * and it is notified about it.
-	 * @param memberName The address of the channel that joined the group.
+	 * The result of applying a batch of joins and leaves to the view.
 	 */
-	public synchronized void addGroupMember(String memberName) {
+	public static class Change {
+
+		/**The view after the changes.*/
+		public final Snapshot view;
+
+		/**The members that joined the view.*/
+		public final List<String> joined;
+
+		/**The members that left the view.*/
+		public final List<String> left;
+
+		Change(Snapshot view, List<String> joined, List<String> left) {
+			this.view = view;
+			this.joined = Collections.unmodifiableList(joined);
+			this.left = Collections.unmodifiableList(left);
+		}
 
-		groupMembers.add(memberName);
+		@Override
+		public String toString() {
+			return "+" + joined + " -" + left + " " + view;
+		}
+	}
 
-		if(temporaryViewIsActive)
-			temporaryView.add(memberName);
+	/**
+	 * It adds the channel "memberName" to the group members' list, because it joined the group.
+	 * @param memberName The address of the channel that joined the group.
+	 * @see #applyChanges(Map)
+	 */
+	public void addGroupMember(String memberName) {
+		applyChanges(Collections.singletonMap(memberName, true));
 	}
 
 	/**
 	 * It removes the channel "memberName" from the list of the group members, because it left the group.
-	 * It triggers a supervisor election if "memberName" was the supervisor of the group,
-	 * or the group destruction if no nodes are present in the group anymore.
-	 * If a groupView update is ongoing, the channel is removed from the temporary groupView too.
 	 * @param memberName The address of the channel which left the group.
+	 * @see #applyChanges(Map)
 	 */
-	public synchronized void removeGroupMember(String memberName) {
-
-		groupMembers.remove(memberName);
+	public void removeGroupMember(String memberName) {
+		applyChanges(Collections.singletonMap(memberName, false));
+	}
 
-		if(temporaryViewIsActive){
-			temporaryView.remove(memberName);
+	/**
+	 * It applies a batch of joins and leaves reported by the session callbacks as one update of the view.
+	 * They are ignored while this view mirrors the supervisor's one, which will send them, unless the
+	 * supervisor itself left. If this channel is the supervisor, the changes are sent to the followers
+	 * as one delta.
+	 * It triggers a supervisor election if the supervisor of the group left.
+	 * @param changes for each member, true if it joined or false if it left, in the order of the events
+	 * @return the applied changes, or null if the view did not change
+	 */
+	public Change applyChanges(Map<String, Boolean> changes) {
+		List<String> joined = new ArrayList<>();
+		List<String> left = new ArrayList<>();
+		Snapshot current;
+		synchronized (this) {
+			if (author != null && !Boolean.FALSE.equals(changes.get(author)))
+				return null;
+			author = null;
+			Snapshot previous = snapshot;
+			snapshot = snapshot.apply(changes, joined, left);
+			current = snapshot;
+			if (current != previous && channel.isSupervisor())
+				channel.notifyViewDelta(current.getVersion(), joined, left);
 		}
 
 		String supervisorId = channel.getSupervisorId();
-		if(supervisorId != null && supervisorId.equals(memberName))
+		if(supervisorId != null && Boolean.FALSE.equals(changes.get(supervisorId)))
 			channel.handleEvent(A3GroupEvent.A3GroupEventType.SUPERVISOR_LEFT);
+
+		return joined.isEmpty() && left.isEmpty() ? null : new Change(current, joined, left);
+	}
+
+	/**
+	 * Replaces this view with the supervisor's one, which will then be kept up to date by its deltas.
+	 * @param supervisorId the address of the supervisor which sent the view
+	 * @param epoch the epoch of the supervisor's view
+	 * @param members the members in the supervisor's view
+	 */
+	public synchronized void applySnapshot(String supervisorId, long epoch, List<String> members) {
+		author = supervisorId;
+		authorEpoch = epoch;
+		snapshot = snapshot.replace(members);
+	}
+
+	/**
+	 * Applies a change of the supervisor's view, if it follows the last one applied.
+	 * Changes that were already applied are ignored.
+	 * @param supervisorId the address of the supervisor which sent the change
+	 * @param epoch the epoch of the supervisor's view after the change
+	 * @param changes for each member, true if it joined or false if it left
+	 * @return false if this view does not mirror the supervisor's one or some changes were missed,
+	 * in which case a new snapshot is needed
+	 */
+	public synchronized boolean applyDelta(String supervisorId, long epoch, Map<String, Boolean> changes) {
+		if (!supervisorId.equals(author) || epoch > authorEpoch + 1)
+			return false;
+		if (epoch == authorEpoch + 1) {
+			authorEpoch = epoch;
+			snapshot = snapshot.apply(changes, new ArrayList<String>(), new ArrayList<String>());
+		}
+		return true;
+	}
+
+	/**
+	 * @param supervisorId the address of the supervisor which broadcast its epoch
+	 * @param epoch the current epoch of the supervisor's view
+	 * @return true if this view does not mirror the supervisor's one up to that epoch, in which case
+	 * a new snapshot is needed
+	 */
+	public synchronized boolean isBehind(String supervisorId, long epoch) {
+		return !supervisorId.equals(author) || epoch > authorEpoch;
+	}
+
+	/**
+	 * Stops mirroring the supervisor's view, e.g. because it left or this channel became the supervisor.
+	 * The view is then built again from the session callbacks.
+	 */
+	public synchronized void clearAuthor() {
+		author = null;
+	}
+
+	/**
+	 * @return the current state of the group view, which does not change afterwards.
+	 */
+	public Snapshot getSnapshot() {
+		return snapshot;
+	}
+
+	/**
+	 * @return the version of the current view, which changes each time a member joins or leaves.
+	 */
+	public long getVersion() {
+		return snapshot.getVersion();
+	}
+
+	/**
+	 * @return the unmodifiable list of the current group members.
+	 */
+	public List<String> getMembers() {
+		return snapshot.getMembers();
 	}
 
 	/**
 	 * @return The string representation of the list of the group members, in the form "[member1, member2, ...]".
 	 */
 	@Override
-	public synchronized String toString() {
-		return groupMembers.toString();
+	public String toString() {
+		return snapshot.toString();
 	}
 
 	/**
-	 * TODO
-	 * @return true if the address of the channel "address" is currently alone in the groupView
-	 * false otherwise.
+	 * @return true if no channel is currently in the groupView, false otherwise.
 	 */
-	public synchronized boolean isViewEmpty(){
-		return groupMembers.isEmpty();
+	public boolean isViewEmpty(){
+		return snapshot.isEmpty();
 	}
 
 	/**
-	 * TODO
 	 * @param address The address of the channel whose presence in the group has to be checked.
 	 * @return true if the address of the channel "address" is currently alone in the groupView
 	 * false otherwise.
 	 */
-	public synchronized boolean isAloneInView(String address){
-		return (groupMembers.contains(address) && groupMembers.size() == 1);
+	public boolean isAloneInView(String address){
+		Snapshot current = snapshot;
+		return (current.contains(address) && current.size() == 1);
 	}
 
 	/**
 	 * It determines if the specified channel is currently in the list of the group members or not.
-	 * If a groupView update is ongoing, the check is performed on the temporary groupView too.
 	 * @param address The address of the channel whose presence in the group has to be checked.
-	 * @return true if the address of the channel "address" is currently in the (temporary) groupView,
+	 * @return true if the address of the channel "address" is currently in the groupView,
 	 * false otherwise.
 	 */
-	public synchronized boolean isInView(String address){
-		return groupMembers.contains(address) || temporaryViewIsActive && temporaryView.contains(address);
+	public boolean isInView(String address){
+		return snapshot.contains(address);
 	}
 
 	public int getNumberOfNodes() {
-		return groupMembers.size();
+		return snapshot.size();
 	}
 }
@@ -1,10 +1,14 @@
 package it.polimi.deepse.a3droid.a3;
 
+import android.os.SystemClock;
 import android.util.Log;
 
+import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import it.polimi.deepse.a3droid.a3.exceptions.A3ChannelNotFoundException;
 import it.polimi.deepse.a3droid.a3.exceptions.A3InvalidOperationParameters;
@@ -12,6 +16,7 @@ import it.polimi.deepse.a3droid.a3.exceptions.A3InvalidOperationRole;
 import it.polimi.deepse.a3droid.a3.exceptions.A3NoGroupDescriptionException;
 import it.polimi.deepse.a3droid.a3.exceptions.A3SupervisorNotElectedException;
 import it.polimi.deepse.a3droid.bus.alljoyn.AlljoynGroupChannel;
+import it.polimi.deepse.a3droid.pattern.Promise;
 
 /**
  * This class represent a device, with the roles it can play in each group.
@@ -52,6 +57,8 @@ public class A3Node implements A3NodeInterface{
                      ArrayList<String> roles){
         this.application = application;
         this.groupDescriptors = a3GroupDescriptors;
+        for(A3GroupDescriptor descriptor : a3GroupDescriptors)
+            descriptorsByName.put(descriptor.getGroupName(), descriptor);
         this.roles = roles;
         this.topologyControl = new A3TopologyControl(this);
     }
@@ -68,7 +75,9 @@ public class A3Node implements A3NodeInterface{
      * @throws A3NoGroupDescriptionException
      */
     public synchronized boolean connect(String groupName) throws A3NoGroupDescriptionException {
-        if(this.isConnected(groupName))
+        /* A channel still joining or waiting for its readiness handshake isn't connected yet,
+         * but it must not be replaced by a second one. */
+        if(hasChannel(groupName))
             return true;
         A3GroupDescriptor descriptor = getGroupDescriptor(groupName);
         if(descriptor != null) {
@@ -83,9 +92,10 @@ public class A3Node implements A3NodeInterface{
         A3SupervisorRole supervisorRole = getRole(descriptor.getSupervisorRoleId(), A3SupervisorRole.class);
         A3FollowerRole followerRole = getRole(descriptor.getFollowerRoleId(), A3FollowerRole.class);
         A3GroupChannel channel = new AlljoynGroupChannel(application, this, groupName, descriptor, followerRole, supervisorRole);
+        if(!addChannel(channel))
+            return;
         channel.prepareHandler();
         channel.connect();
-        addChannel(channel);
     }
 
     /**
@@ -117,6 +127,122 @@ public class A3Node implements A3NodeInterface{
         return result;
     }
 
+    /**
+     * Connects to a group without blocking
+     * @see A3GroupDescriptor.A3GroupState
+     * @param groupName name of the group to be connected with
+     * @return completed with true when the group is ACTIVE, or failed if the channel disconnects before
+     * @throws A3NoGroupDescriptionException
+     */
+    public Promise<Boolean> connectAsync(String groupName) throws A3NoGroupDescriptionException {
+        connect(groupName);
+        try {
+            return awaitActivation(groupName);
+        } catch (A3ChannelNotFoundException e) {
+            return Promise.failed(e);
+        }
+    }
+
+    /**
+     * Connects to a group without blocking
+     * @param groupName name of the group to be connected with
+     * @param timeout the milliseconds the group is given to become ACTIVE
+     * @return completed with true when the group is ACTIVE, or failed with a TimeoutException
+     * if it isn't within the timeout
+     * @throws A3NoGroupDescriptionException
+     */
+    public Promise<Boolean> connectAsync(String groupName, int timeout) throws A3NoGroupDescriptionException {
+        Promise<Boolean> activation = connectAsync(groupName);
+        try {
+            return activation.withTimeout(timeout, getChannel(groupName).getControlExecutor());
+        } catch (A3ChannelNotFoundException e) {
+            return activation;
+        }
+    }
+
+    /**
+     * Connects to many groups at once, e.g. at startup. The groups are created or joined and their
+     * supervisors elected concurrently, so the time to have them all ACTIVE approaches the one of the
+     * slowest group. When they are, the time each one took to be discovered, to be joined and to elect its
+     * supervisor is logged.
+     * @param groupNames names of the groups to be connected with
+     * @param timeout the milliseconds the groups are given to become ACTIVE
+     * @return completed with true when all the groups are ACTIVE, or failed as soon as one of them
+     * fails or isn't ACTIVE within the timeout
+     * @throws A3NoGroupDescriptionException if this node has no descriptor for one of the groups,
+     * before connecting to any of them
+     */
+    public Promise<Boolean> connectAll(final List<String> groupNames, int timeout) throws A3NoGroupDescriptionException {
+        for(String groupName : groupNames)
+            getGroupDescriptor(groupName);
+        final long start = SystemClock.elapsedRealtime();
+        List<Promise<Boolean>> activations = new ArrayList<>();
+        for(String groupName : groupNames)
+            activations.add(connectAsync(groupName, timeout));
+        return Promise.all(activations).thenCompose(new Promise.Transformation<List<Boolean>, Boolean>() {
+            @Override
+            public Promise<Boolean> apply(List<Boolean> result) {
+                logConnectTimings(groupNames, start);
+                return Promise.completed(true);
+            }
+        });
+    }
+
+    /**
+     * Logs the phases of the connection to each group: its discovery, counted from the start of connectAll
+     * and 0 if it was already found, its creation or join, and the election of its supervisor.
+     */
+    private void logConnectTimings(List<String> groupNames, long start){
+        Log.i(TAG, "connectAll(): " + groupNames.size() + " groups ACTIVE in " + (SystemClock.elapsedRealtime() - start) + "ms");
+        for(String groupName : groupNames) {
+            try {
+                A3GroupChannel channel = getChannel(groupName);
+                long foundTime = channel.getGroupFoundTime();
+                String discovery = foundTime >= 0 ?
+                        "discovered in " + Math.max(0, foundTime - start) + "ms" : "not discovered, created";
+                Log.i(TAG, "connectAll(): " + groupName + " " + discovery + ", joined in " + channel.getTimeToJoin() +
+                        "ms, supervisor elected in " + channel.getTimeToActive() + "ms");
+            } catch (A3ChannelNotFoundException e) {
+                Log.e(TAG, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Reconnects to a group without blocking: the new connection starts once the old channel
+     * has flushed its outbound and disconnected
+     * @param groupName name of the group to be reconnected with
+     * @return completed with true when the group is ACTIVE again
+     * @throws A3ChannelNotFoundException
+     */
+    public Promise<Boolean> reconnectAsync(final String groupName) throws A3ChannelNotFoundException {
+        return disconnect(groupName, AlljoynGroupChannel.DISCONNECT_FLUSH_TIMEOUT).thenCompose(
+                new Promise.Transformation<Boolean, Boolean>() {
+                    @Override
+                    public Promise<Boolean> apply(Boolean flushed) throws Exception {
+                        return connectAsync(groupName);
+                    }
+                });
+    }
+
+    /**
+     * Waits for a group to be ACTIVE without blocking
+     * @param groupName name of a group this node is connected to
+     * @return completed with true when the group is ACTIVE, or failed if the channel disconnects before
+     * @throws A3ChannelNotFoundException
+     */
+    public Promise<Boolean> awaitActivation(String groupName) throws A3ChannelNotFoundException {
+        return getChannel(groupName).awaitState(A3GroupDescriptor.A3GroupState.ACTIVE).thenCompose(ACTIVATED);
+    }
+
+    private static final Promise.Transformation<A3GroupDescriptor.A3GroupState, Boolean> ACTIVATED =
+            new Promise.Transformation<A3GroupDescriptor.A3GroupState, Boolean>() {
+                @Override
+                public Promise<Boolean> apply(A3GroupDescriptor.A3GroupState state) {
+                    return Promise.completed(true);
+                }
+            };
+
     /**
      * Disconnects this node from a group and removes the corresponding channel
      * @param groupName
@@ -129,6 +255,22 @@ public class A3Node implements A3NodeInterface{
         removeChannel(channel);
     }
 
+    /**
+     * Disconnects this node from a group and removes the corresponding channel, without blocking
+     * @param groupName
+     * @param flushTimeout the milliseconds given to the messages still to be sent before they are
+     *                     dropped, 0 to drop them immediately
+     * @return completed when the channel disconnects, with false if some messages were dropped
+     * @throws A3ChannelNotFoundException
+     */
+    public Promise<Boolean> disconnect(String groupName, long flushTimeout) throws A3ChannelNotFoundException {
+        A3GroupChannel channel;
+        channel = getChannel(groupName);
+        Promise<Boolean> disconnection = channel.disconnect(flushTimeout);
+        removeChannel(channel);
+        return disconnection;
+    }
+
     /**
      * It tries to create a hierarchical relationship between the specified groups.
      * This is possible only if this node is the supervisor of at least one of the two groups
@@ -211,6 +353,26 @@ public class A3Node implements A3NodeInterface{
         topologyControl.split(groupName, nodesToTransfer);
     }
 
+    /**
+     * If this node is the supervisor of the group "groupName", it hands the supervisor role over to
+     * another member, e.g. because it is about to leave or a fitter member joined.
+     * The successor receives the state and the pending messages of the supervisor role (see A3SupervisorRole)
+     * and then announces itself, without the group going through a new election.
+     *
+     * @param groupName The name of the group.
+     * @param successor The address of the member to hand over to, or null for the fittest candidate known.
+     * @throws A3InvalidOperationParameters This node is not the supervisor of the group, or there is no successor.
+     * @throws A3ChannelNotFoundException
+     */
+    public void handOver(String groupName, String successor) throws
+            A3InvalidOperationParameters, A3ChannelNotFoundException {
+        Log.i(TAG, "handOver(" + groupName + ", " + successor + ")");
+        validateGroupNameParameters(groupName);
+        validateOneSupervisorRole(groupName);
+        if (!getChannel(groupName).handOverSupervisor(successor))
+            throw new A3InvalidOperationParameters("Operation requires a successor in the group");
+    }
+
     private void validateStackParameters(String groupName, int nodesToTransfer) throws A3InvalidOperationParameters, A3ChannelNotFoundException {
         validateGroupNameParameters(groupName);
         validateOneSupervisorRole(groupName);
@@ -334,25 +496,25 @@ public class A3Node implements A3NodeInterface{
         }
     }
 
-    /**Looks for a group descriptor in the "groupDescriptors" list.
+    /**Looks for a group descriptor in the "descriptorsByName" index.
      *
      * @param groupName The name of the group whose descriptor is requested.
      * @return The descriptor of the group "groupName".
      */
-    private A3GroupDescriptor getGroupDescriptor(String groupName) throws A3NoGroupDescriptionException {
-        A3GroupDescriptor descriptor;
-        String name;
-
-        synchronized(groupDescriptors){
-            for(int i = 0; i < groupDescriptors.size(); i++){
-                descriptor = groupDescriptors.get(i);
-                name = descriptor.getGroupName();
-
-				/* Groups splitted by main groups have the same descriptor as their main groups
-				 * and their names are extensions of the main group names.
-				 */
-                if(groupName.equals(name) || groupName.startsWith(name + "_"))
-                    return descriptor;
+    A3GroupDescriptor getGroupDescriptor(String groupName) throws A3NoGroupDescriptionException {
+        A3GroupDescriptor descriptor = descriptorsByName.get(groupName);
+        if(descriptor != null)
+            return descriptor;
+
+        /* Groups splitted by main groups have the same descriptor as their main groups
+         * and their names are extensions of the main group names, e.g. "group_1".
+         * The base name found is indexed, so it's looked for only once per split group.
+         */
+        for(int i = groupName.lastIndexOf('_'); i > 0; i = groupName.lastIndexOf('_', i - 1)){
+            descriptor = descriptorsByName.get(groupName.substring(0, i));
+            if(descriptor != null) {
+                descriptorsByName.putIfAbsent(groupName, descriptor);
+                return descriptor;
             }
         }
         throw new A3NoGroupDescriptionException("NO GROUP WITH NAME " + groupName);
@@ -363,9 +525,7 @@ public class A3Node implements A3NodeInterface{
      * @return an ArrayList with a copy of the original list
      */
     protected ArrayList<A3GroupDescriptor> getGroupDescriptors(){
-        ArrayList<A3GroupDescriptor> groupDescriptorsCopy = new ArrayList<A3GroupDescriptor>();
-        Collections.copy(groupDescriptorsCopy, groupDescriptors);
-        return groupDescriptorsCopy;
+        return new ArrayList<>(groupDescriptors);
     }
 
     /**The list of the descriptors of the groups that can be present in the system.
@@ -373,37 +533,92 @@ public class A3Node implements A3NodeInterface{
      */
     private final ArrayList<A3GroupDescriptor> groupDescriptors;
 
-    /**Looks for a role in the "roles" list.
+    /**The descriptors indexed by the names of their groups, and by the names of the split groups
+     * already looked for.
+     */
+    private final ConcurrentMap<String, A3GroupDescriptor> descriptorsByName = new ConcurrentHashMap<>();
+
+    /**Creates a new instance of a role in the "roles" list.
      *
      * @param roleId The className of the role to look for.
-     * @return The role with "roleId" as className.
-     * @throws Exception No role has "roleId" as className.
+     * @return A new instance of the role with "roleId" as className, or null if this node can't play it.
      */
     protected <T extends A3Role> T getRole(String roleId, Class<T> type){
-        String role;
-
-        synchronized(roles){
-            for(int i = 0; i < roles.size(); i++){
-                role = roles.get(i);
-                if(role.equals(roleId))
-                    try {
-                        A3Role a3Role = (A3Role) Class.forName(roleId).getConstructor().newInstance();
-                        a3Role.setNode(this);
-                        return type.cast(a3Role);
-                    } catch (InstantiationException e) {
-                        e.printStackTrace();
-                    } catch (IllegalAccessException e) {
-                        e.printStackTrace();
-                    } catch (InvocationTargetException e) {
-                        e.printStackTrace();
-                    } catch (NoSuchMethodException e) {
-                        e.printStackTrace();
-                    } catch (ClassNotFoundException e) {
-                        e.printStackTrace();
-                    }
+        A3RoleFactory factory = getRoleFactory(roleId);
+        if(factory == null)
+            return null;
+        A3Role a3Role = factory.createRole();
+        if(a3Role == null)
+            return null;
+        a3Role.setNode(this);
+        return type.cast(a3Role);
+    }
+
+    /**
+     * Lets this node create a role without reflection. It replaces the factory resolved by the node,
+     * if any, and only has effect if the role is in the "roles" list.
+     * @param roleId The className of the role.
+     * @param factory The factory creating the instances of the role.
+     */
+    public void registerRoleFactory(String roleId, A3RoleFactory factory){
+        roleFactories.put(roleId, factory);
+    }
+
+    /**
+     * Resolves the constructors of all the roles without a registered factory, so that connecting to
+     * groups later, e.g. during stack, merge or split operations, doesn't load classes.
+     */
+    public void resolveRoleFactories(){
+        for(String roleId : roles)
+            getRoleFactory(roleId);
+    }
+
+    /**
+     * @param roleId The className of the role.
+     * @return The factory of the role, resolved the first time it is needed, or null if this node
+     * can't play the role.
+     */
+    private A3RoleFactory getRoleFactory(String roleId){
+        if(roleId == null || !roles.contains(roleId))
+            return null;
+        A3RoleFactory factory = roleFactories.get(roleId);
+        if(factory != null)
+            return factory;
+        try {
+            factory = new ConstructorRoleFactory(Class.forName(roleId).asSubclass(A3Role.class).getConstructor());
+        } catch (NoSuchMethodException e) {
+            e.printStackTrace();
+            return null;
+        } catch (ClassNotFoundException e) {
+            e.printStackTrace();
+            return null;
+        }
+        A3RoleFactory previous = roleFactories.putIfAbsent(roleId, factory);
+        return previous != null ? previous : factory;
+    }
+
+    /**Creates a role through its no-argument constructor, looked up once.*/
+    private static class ConstructorRoleFactory implements A3RoleFactory {
+
+        private final Constructor<? extends A3Role> constructor;
+
+        ConstructorRoleFactory(Constructor<? extends A3Role> constructor){
+            this.constructor = constructor;
+        }
+
+        @Override
+        public A3Role createRole() {
+            try {
+                return constructor.newInstance();
+            } catch (InstantiationException e) {
+                e.printStackTrace();
+            } catch (IllegalAccessException e) {
+                e.printStackTrace();
+            } catch (InvocationTargetException e) {
+                e.printStackTrace();
             }
+            return null;
         }
-        return null;
     }
 
     /**The list of roles this node can assume.
@@ -411,6 +626,9 @@ public class A3Node implements A3NodeInterface{
      */
     private final ArrayList<String> roles;
 
+    /**The factories of the roles in the "roles" list, by role className.*/
+    private final ConcurrentMap<String, A3RoleFactory> roleFactories = new ConcurrentHashMap<>();
+
     public boolean waitForActivation(String groupName) throws A3ChannelNotFoundException {
         A3GroupChannel channel = getChannel(groupName);
         waitForState(channel, A3GroupDescriptor.A3GroupState.ACTIVE);
@@ -434,41 +652,50 @@ public class A3Node implements A3NodeInterface{
         }
     }
 
-    /**Looks for a channel in the "channels" list.
+    /**Looks for a channel in the "channels" map, without locking.
      *
      * @param groupName The name of the group to communicate with (i.e. to which the channel is connected).
      * @return The channel connected to the group "groupName".
      * @throws Exception No channel is connected to the group "groupName".
      */
-    protected synchronized A3GroupChannel getChannel(String groupName) throws A3ChannelNotFoundException {
-
-        A3GroupChannel channel;
-        for(int i = 0; i < channels.size(); i++){
-            channel = channels.get(i);
+    protected A3GroupChannel getChannel(String groupName) throws A3ChannelNotFoundException {
+        A3GroupChannel channel = channels.get(groupName);
+        if(channel == null)
+            throw new A3ChannelNotFoundException("A3GroupChannel for group " + groupName + "is not in this group's channel list");
+        return channel;
+    }
 
-            if(channel.getGroupName().equals(groupName))
-                return channel;
-        }
-        throw new A3ChannelNotFoundException("A3GroupChannel for group " + groupName + "is not in this group's channel list");
+    /**
+     * @param groupName The name of a group.
+     * @return true if this node has a channel to the group "groupName", whatever its state.
+     */
+    protected boolean hasChannel(String groupName){
+        return channels.containsKey(groupName);
     }
 
-    protected synchronized ArrayList<A3GroupChannel> getChannels(){
-        return channels;
+    /**
+     * @return a snapshot of the channels of this node
+     */
+    protected ArrayList<A3GroupChannel> getChannels(){
+        return new ArrayList<>(channels.values());
     }
 
 
-    protected synchronized void addChannel(A3GroupChannel channel){
-        channels.add(channel);
+    /**
+     * @return false if this node already has a channel to the same group, which is kept.
+     */
+    protected boolean addChannel(A3GroupChannel channel){
+        return channels.putIfAbsent(channel.getGroupName(), channel) == null;
     }
 
-    protected synchronized void removeChannel(A3GroupChannel channel){
-        channels.remove(channel);
+    protected void removeChannel(A3GroupChannel channel){
+        channels.remove(channel.getGroupName(), channel);
     }
 
-    /**The list of the channels to communicate with the groups this node is connected to.
+    /**The channels to communicate with the groups this node is connected to, by group name.
      * There are also channels that are disconnected because they are in "wait" group.
-     * In such case, a channel to the group "wait" is connected and in this list.*/
-    private ArrayList<A3GroupChannel> channels = new ArrayList<>();
+     * In such case, a channel to the group "wait" is connected and in this map.*/
+    private final ConcurrentMap<String, A3GroupChannel> channels = new ConcurrentHashMap<>();
 
     protected A3TopologyControl getTopologyControl(){
         return topologyControl;
@@ -2,6 +2,7 @@ package it.polimi.deepse.a3droid.a3;
 
 import android.os.Handler;
 import android.os.HandlerThread;
+import android.os.Looper;
 import android.os.Message;
 
 import org.greenrobot.eventbus.EventBus;
@@ -9,6 +10,7 @@ import org.greenrobot.eventbus.EventBus;
 import java.lang.ref.WeakReference;
 
 import it.polimi.deepse.a3droid.a3.events.A3UIEvent;
+import it.polimi.deepse.a3droid.pattern.EventLoopPool;
 
 
 /**
@@ -195,10 +197,35 @@ public abstract class A3Role implements Runnable {
 		private final WeakReference<A3Role> mRole;
 		private Handler mHandler;
 
+		/**True if this handler runs on the node's shared event loops rather than on its own thread.*/
+		private final boolean shared;
+		private boolean quit = false;
+
 		public RoleMessageHandler(A3Role role) {
 			super("RoleMessageHandler_" + role.getGroupName());
 			mRole = new WeakReference<>(role);
-			start();
+			Looper sharedLooper = EventLoopPool.getLooper(role.getGroupName());
+			shared = sharedLooper != null;
+			if (shared)
+				prepareHandler(sharedLooper);
+			else
+				start();
+		}
+
+		/**
+		 * On the shared event loops the messages following the pending ones are ignored, as the loop keeps running.
+		 */
+		@Override
+		public boolean quitSafely() {
+			if (!shared)
+				return super.quitSafely();
+			mHandler.post(new Runnable() {
+				@Override
+				public void run() {
+					quit = true;
+				}
+			});
+			return true;
 		}
 
 		public Message obtainMessage() {
@@ -212,13 +239,17 @@ public abstract class A3Role implements Runnable {
 		@Override
 		protected void onLooperPrepared() {
 			super.onLooperPrepared();
+			prepareHandler(getLooper());
+		}
 
+		private void prepareHandler(Looper looper) {
 			final A3Role role = mRole.get();
 
-			mHandler = new Handler(getLooper()) {
+			mHandler = new Handler(looper) {
 				@Override
 				public void handleMessage(Message msg) {
-					role.receiveApplicationMessage((A3Message) msg.obj);
+					if (!quit)
+						role.receiveApplicationMessage((A3Message) msg.obj);
 				}
 			};
 		}
@@ -0,0 +1,16 @@
+package it.polimi.deepse.a3droid.a3;
+
+/**
+ * Creates the instances of a role, one for each channel the role is used in.
+ * Applications can register a factory on a node for each of its roles with
+ * A3Node.registerRoleFactory(String, A3RoleFactory), so that the roles are created without
+ * reflection. Otherwise the node creates them through their no-argument constructor, which
+ * it looks up only once per role.
+ */
+public interface A3RoleFactory {
+
+    /**
+     * @return a new instance of the role, not yet bound to a node or a channel
+     */
+    A3Role createRole();
+}
@@ -1,5 +1,8 @@
 package it.polimi.deepse.a3droid.a3;
 
+import java.util.Collections;
+import java.util.List;
+
 /**
  * This class represents the logic executed on a supervisor.
  * It adds an AllJoyn signal receiver to the role logic, in order to receive messages from followers.
@@ -9,4 +12,47 @@ package it.polimi.deepse.a3droid.a3;
 public abstract class A3SupervisorRole extends A3Role{
 
     public abstract void receiveApplicationMessage(A3Message message);
+
+    /**
+     * To override in order to replicate the state of this supervisor on the backup of the group,
+     * when the group descriptor enables the hot standby.
+     * @return the full state of this supervisor, or null if it has none (default implementation).
+     */
+    public String getState() {
+        return null;
+    }
+
+    /**
+     * To override in order to keep the replicated state on the backup.
+     * It is called on the supervisor role of the backup, which is not active, when it is designated.
+     * The role should take the state over in onActivation().
+     * @param state the full state of the supervisor, as returned by getState(), or null if it has none.
+     */
+    public void applyState(String state) {}
+
+    /**
+     * To override in order to keep the replicated state on the backup.
+     * It is called on the supervisor role of the backup, which is not active, for each change
+     * the supervisor sent with replicateState(), in the same order.
+     * @param delta the change of the supervisor state.
+     */
+    public void applyStateDelta(String delta) {}
+
+    /**
+     * To override in order to hand the work this supervisor did not do yet over to its successor,
+     * when the role is handed over (see A3Node.handOver()). The messages are sent to the successor
+     * after the state, and keep their sender address, or this node's one if they have none.
+     * @return the messages the successor should process, empty by default.
+     */
+    public List<A3Message> getPendingMessages() {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Sends a change of the state of this supervisor to the backup, if there is one.
+     * @param delta the change of the state, which the backup receives in applyStateDelta().
+     */
+    protected void replicateState(String delta) {
+        getChannel().replicateSupervisorState(delta);
+    }
 }
\ No newline at end of file
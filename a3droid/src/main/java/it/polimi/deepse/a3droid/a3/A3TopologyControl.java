@@ -8,9 +8,12 @@ import it.polimi.deepse.a3droid.a3.exceptions.A3ChannelNotFoundException;
 import it.polimi.deepse.a3droid.a3.exceptions.A3InvalidOperationParameters;
 import it.polimi.deepse.a3droid.a3.exceptions.A3InvalidOperationRole;
 import it.polimi.deepse.a3droid.a3.exceptions.A3NoGroupDescriptionException;
+import it.polimi.deepse.a3droid.pattern.Promise;
 
 /**
  * Created by danilo on 17/10/16.
+ * Operations which need to be connected to a group first continue when the group becomes ACTIVE,
+ * on the thread activating it, instead of parking the calling thread until then.
  */
 
 public class A3TopologyControl {
@@ -19,6 +22,9 @@ public class A3TopologyControl {
 
     A3Node node;
 
+    /**The time a group is given to become ACTIVE after connecting to it for an operation.*/
+    private static final int ACTIVATION_TIMEOUT = 10000;
+
     protected A3TopologyControl (A3Node node){
         this.node = node;
     }
@@ -70,16 +76,31 @@ public class A3TopologyControl {
      * @throws A3NoGroupDescriptionException
      * @throws A3ChannelNotFoundException
      */
-    private boolean requestStack(String parentGroupName, String childGroupName) throws A3NoGroupDescriptionException, A3ChannelNotFoundException {
-        if (node.connectAndWaitForActivation(childGroupName)) {
-            A3GroupChannel channel;
-            channel = node.getChannel(childGroupName);
-            channel.requestStack(parentGroupName);
-            return true;
-        } else {
-            stackReply(parentGroupName, childGroupName, false, true);
-            return false;
-        }
+    private boolean requestStack(final String parentGroupName, final String childGroupName) throws A3NoGroupDescriptionException, A3ChannelNotFoundException {
+        final boolean hadChannel = node.hasChannel(childGroupName);
+        node.connectAsync(childGroupName, ACTIVATION_TIMEOUT).addCallback(new Promise.Callback<Boolean>() {
+            @Override
+            public void onSuccess(Boolean result) {
+                try {
+                    node.getChannel(childGroupName).requestStack(parentGroupName);
+                } catch (A3ChannelNotFoundException e) {
+                    onFailure(e);
+                }
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                Log.e(TAG, "requestStack(" + parentGroupName + ", " + childGroupName + "): " + e.getMessage());
+                try {
+                    stackReply(parentGroupName, childGroupName, false, false);
+                } catch (A3ChannelNotFoundException ex) {
+                    Log.e(TAG, ex.getMessage());
+                }
+                if(!hadChannel)
+                    disconnectAfterFailure(childGroupName);
+            }
+        });
+        return true;
     }
 
     /**
@@ -140,16 +161,32 @@ public class A3TopologyControl {
      * @throws A3NoGroupDescriptionException
      * @throws A3ChannelNotFoundException
      */
-    private boolean requestReverseStack(String parentGroupName, String childGroupName) throws
+    private boolean requestReverseStack(final String parentGroupName, final String childGroupName) throws
             A3NoGroupDescriptionException, A3ChannelNotFoundException {
-        if (node.connectAndWaitForActivation(childGroupName)) {
-            A3GroupChannel channel = node.getChannel(childGroupName);
-            channel.requestReverseStack(parentGroupName);
-            return true;
-        } else {
-            reverseStackReply(parentGroupName, childGroupName, false, true);
-            return false;
-        }
+        final boolean hadChannel = node.hasChannel(childGroupName);
+        node.connectAsync(childGroupName, ACTIVATION_TIMEOUT).addCallback(new Promise.Callback<Boolean>() {
+            @Override
+            public void onSuccess(Boolean result) {
+                try {
+                    node.getChannel(childGroupName).requestReverseStack(parentGroupName);
+                } catch (A3ChannelNotFoundException e) {
+                    onFailure(e);
+                }
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                Log.e(TAG, "requestReverseStack(" + parentGroupName + ", " + childGroupName + "): " + e.getMessage());
+                try {
+                    reverseStackReply(parentGroupName, childGroupName, false, false);
+                } catch (A3ChannelNotFoundException ex) {
+                    Log.e(TAG, ex.getMessage());
+                }
+                if(!hadChannel)
+                    disconnectAfterFailure(childGroupName);
+            }
+        });
+        return true;
     }
 
     /**
@@ -189,16 +226,32 @@ public class A3TopologyControl {
      * @throws A3NoGroupDescriptionException
      * @throws A3ChannelNotFoundException
      */
-    private boolean requestMerge(String destinationGroupName, String sourceGroupName)
+    private boolean requestMerge(final String destinationGroupName, final String sourceGroupName)
             throws A3NoGroupDescriptionException, A3ChannelNotFoundException {
-        if (node.connectAndWaitForActivation(sourceGroupName)) {
-            A3GroupChannel channel = node.getChannel(sourceGroupName);
-            channel.requestMerge(destinationGroupName);
-            return true;
-        } else {
-            mergeReply(destinationGroupName, sourceGroupName, false, true);
-            return false;
-        }
+        final boolean hadChannel = node.hasChannel(sourceGroupName);
+        node.connectAsync(sourceGroupName, ACTIVATION_TIMEOUT).addCallback(new Promise.Callback<Boolean>() {
+            @Override
+            public void onSuccess(Boolean result) {
+                try {
+                    node.getChannel(sourceGroupName).requestMerge(destinationGroupName);
+                } catch (A3ChannelNotFoundException e) {
+                    onFailure(e);
+                }
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                Log.e(TAG, "requestMerge(" + destinationGroupName + ", " + sourceGroupName + "): " + e.getMessage());
+                try {
+                    mergeReply(destinationGroupName, sourceGroupName, false, false);
+                } catch (A3ChannelNotFoundException ex) {
+                    Log.e(TAG, ex.getMessage());
+                }
+                if(!hadChannel)
+                    disconnectAfterFailure(sourceGroupName);
+            }
+        });
+        return true;
     }
 
     /**
@@ -223,7 +276,7 @@ public class A3TopologyControl {
      * @param destinationGroupName The name of the group to joinGroup to.
      * @param sourceGroupName The name of the group to disconnect from.
      */
-    protected synchronized boolean performMerge(String destinationGroupName, String sourceGroupName)
+    protected synchronized boolean performMerge(final String destinationGroupName, final String sourceGroupName)
             throws A3NoGroupDescriptionException, A3ChannelNotFoundException {
         /**
          * TODO: replace this by a passive/control membership which won't receive this msg
@@ -234,8 +287,25 @@ public class A3TopologyControl {
          */
         if(!node.isSupervisor(destinationGroupName) || node.isSupervisor(sourceGroupName)) {
             disconnectHierarchyBellow(sourceGroupName);
-            node.connectAndWaitForActivation(destinationGroupName);
-            mergeReply(destinationGroupName, sourceGroupName, true, true);
+            final boolean hadChannel = node.hasChannel(destinationGroupName);
+            node.connectAsync(destinationGroupName, ACTIVATION_TIMEOUT).addCallback(new Promise.Callback<Boolean>() {
+                @Override
+                public void onSuccess(Boolean result) {
+                    try {
+                        mergeReply(destinationGroupName, sourceGroupName, true, true);
+                    } catch (A3ChannelNotFoundException e) {
+                        Log.e(TAG, e.getMessage());
+                    }
+                }
+
+                @Override
+                public void onFailure(Exception e) {
+                    //Stays in the source group rather than in no group at all
+                    Log.e(TAG, "performMerge(" + destinationGroupName + ", " + sourceGroupName + "): " + e.getMessage());
+                    if(!hadChannel)
+                        disconnectAfterFailure(destinationGroupName);
+                }
+            });
             return true;
         }else
             return false;
@@ -254,6 +324,20 @@ public class A3TopologyControl {
             node.disconnect(originGroupName);
     }
 
+    /**
+     * Disconnects from a group which was connected only for an operation which then failed, e.g. because
+     * it wasn't ACTIVE within the timeout, so that its channel doesn't keep on joining and electing
+     * a supervisor.
+     * @param groupName The name of the group connected for the operation.
+     */
+    private void disconnectAfterFailure(String groupName){
+        try {
+            node.disconnect(groupName);
+        } catch (A3ChannelNotFoundException e) {
+            Log.e(TAG, e.getMessage());
+        }
+    }
+
     /** Disconnects this node from the group hierarchy above oldGroupName group, if any **/
     private void disconnectFromHierarchyAbove(String oldGroupName) throws A3ChannelNotFoundException {
         ArrayList<String> oldHierarchy = node.getChannel(oldGroupName).getHierarchyView().getHierarchy();
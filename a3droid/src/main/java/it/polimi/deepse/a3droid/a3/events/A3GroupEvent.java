@@ -19,6 +19,7 @@ public class A3GroupEvent {
         GROUP_STATE_CHANGED,
         MEMBER_LEFT,
         MEMBER_JOINED,
+        GROUP_VIEW_CHANGED,
         SUPERVISOR_LEFT,
         SUPERVISOR_ELECTED,
         STACK_STARTED,
@@ -79,8 +79,9 @@ public class AlljoynBus extends A3Bus {
                 null,
                 null
         );
-        mBackgroundHandler.connect(mDiscoveryChannel);
-        mBackgroundHandler.startDiscovery(mDiscoveryChannel);
+        mDiscoveryChannel.useSharedBus();
+        getBackgroundHandler(mDiscoveryChannel).connect(mDiscoveryChannel);
+        getBackgroundHandler(mDiscoveryChannel).startDiscovery(mDiscoveryChannel);
     }
 
     /**
@@ -93,8 +94,8 @@ public class AlljoynBus extends A3Bus {
     public void onDestroy() {
         super.onDestroy();
         Log.i(TAG, "onDestroy()");
-        mBackgroundHandler.cancelDiscovery(mDiscoveryChannel);
-        mBackgroundHandler.disconnect(mDiscoveryChannel);
+        getBackgroundHandler(mDiscoveryChannel).cancelDiscovery(mDiscoveryChannel);
+        getBackgroundHandler(mDiscoveryChannel).disconnect(mDiscoveryChannel);
         stopBusThread();
         application.deleteObserver(this);
     }
@@ -164,6 +165,12 @@ public class AlljoynBus extends A3Bus {
             mHandler.sendMessage(message);
         }
 
+        if (qualifier.equals(AlljoynGroupChannel.READY_REQUESTED_EVENT)) {
+            Message message = mHandler.obtainMessage(HANDLE_READY_REQUESTED_EVENT);
+            message.obj = o;
+            mHandler.sendMessage(message);
+        }
+
         //In both cases, try to send a message if channel state is JOINT.
         if (qualifier.equals(A3GroupChannel.OUTBOUND_CHANGED_EVENT) ||
                 qualifier.equals(AlljoynGroupChannel.CHANNEL_STATE_CHANGED_EVENT)) {
@@ -215,21 +222,21 @@ public class AlljoynBus extends A3Bus {
                 break;
                 case HANDLE_CONNECT_EVENT: {
                     Log.i(TAG, "mHandler.handleMessage(): HANDLE_CONNECT_EVENT");
-                    mBackgroundHandler.connect(channel);
+                    getBackgroundHandler(channel).connect(channel);
                 }
                 break;
                 case HANDLE_DISCONNECT_EVENT: {
                     Log.i(TAG, "mHandler.handleMessage(): HANDLE_CONNECT_EVENT");
-                    mBackgroundHandler.disconnect(channel);
+                    getBackgroundHandler(channel).disconnect(channel);
                 }
                 break;
                 case HANDLE_JOIN_CHANNEL_EVENT: {
                     Log.i(TAG, "mHandler.handleMessage(): JOIN_CHANNEL_EVENT");
                     switch (channel.getChannelState()) {
                         case IDLE:
-                            mBackgroundHandler.addChannel(channel);
+                            getBackgroundHandler(channel).addChannel(channel);
                         case REGISTERED:
-                            mBackgroundHandler.joinSession(channel);
+                            getBackgroundHandler(channel).joinSession(channel);
                         default:
                             break;
                     }
@@ -239,9 +246,9 @@ public class AlljoynBus extends A3Bus {
                     Log.i(TAG, "mHandler.handleMessage(): USE_LEAVE_CHANNEL_EVENT");
                     switch (channel.getChannelState()) {
                         case JOINT:
-                            mBackgroundHandler.leaveSession(channel);
+                            getBackgroundHandler(channel).leaveSession(channel);
                         case REGISTERED:
-                            mBackgroundHandler.removeChannel(channel);
+                            getBackgroundHandler(channel).removeChannel(channel);
                     }
                 }
                 break;
@@ -250,13 +257,13 @@ public class AlljoynBus extends A3Bus {
                     if(channel != null) {
                         switch (channel.getServiceState()) {
                             case IDLE:
-                                mBackgroundHandler.addService(channel);
+                                getBackgroundHandler(channel).addService(channel);
                             case REGISTERED:
-                                mBackgroundHandler.requestName(channel);
+                                getBackgroundHandler(channel).requestName(channel);
                             case NAMED:
-                                mBackgroundHandler.bindSession(channel);
+                                getBackgroundHandler(channel).bindSession(channel);
                             case BOUND:
-                                mBackgroundHandler.advertise(channel);
+                                getBackgroundHandler(channel).advertise(channel);
                             default:
                                 break;
                         }
@@ -267,11 +274,11 @@ public class AlljoynBus extends A3Bus {
                     Log.i(TAG, "mHandler.handleMessage(): STOP_SERVICE_EVENT");
                     switch (channel.getServiceState()) {
                         case ADVERTISED:
-                            mBackgroundHandler.cancelAdvertise(channel);
+                            getBackgroundHandler(channel).cancelAdvertise(channel);
                         case BOUND:
-                            mBackgroundHandler.unbindSession(channel);
+                            getBackgroundHandler(channel).unbindSession(channel);
                         case NAMED:
-                            mBackgroundHandler.releaseName(channel);
+                            getBackgroundHandler(channel).releaseName(channel);
                         default:
                             break;
                     }
@@ -279,7 +286,12 @@ public class AlljoynBus extends A3Bus {
                 break;
                 case HANDLE_OUTBOUND_CHANGED_EVENT: {
                     Log.i(TAG, "mHandler.handleMessage(): OUTBOUND_CHANGED_EVENT");
-                    mBackgroundHandler.sendMessages(channel);
+                    getBackgroundHandler(channel).sendMessages(channel);
+                }
+                break;
+                case HANDLE_READY_REQUESTED_EVENT: {
+                    Log.i(TAG, "mHandler.handleMessage(): READY_REQUESTED_EVENT");
+                    getBackgroundHandler(channel).requestReady(channel);
                 }
                 break;
                 default:
@@ -330,6 +342,11 @@ public class AlljoynBus extends A3Bus {
      */
     private static final int HANDLE_OUTBOUND_CHANGED_EVENT = 8;
 
+    /**
+     * Value for the HANDLE_READY_REQUESTED_EVENT case observer notification handler.
+     */
+    private static final int HANDLE_READY_REQUESTED_EVENT = 9;
+
 
     /**
      * This is the AllJoyn background thread handler class.  AllJoyn is a
@@ -366,8 +383,8 @@ public class AlljoynBus extends A3Bus {
          */
         public void exit() {
             Log.i(TAG, "mBackgroundHandler.exit()");
-            Message msg = mBackgroundHandler.obtainMessage(EXIT);
-            mBackgroundHandler.sendMessage(msg);
+            Message msg = obtainMessage(EXIT);
+            sendMessage(msg);
         }
 
         /**
@@ -378,9 +395,9 @@ public class AlljoynBus extends A3Bus {
          */
         public void connect(AlljoynGroupChannel channel) {
             Log.i(TAG, "mBackgroundHandler.connect()");
-            Message msg = mBackgroundHandler.obtainMessage(CONNECT);
+            Message msg = obtainMessage(CONNECT);
             msg.obj = channel;
-            mBackgroundHandler.sendMessage(msg);
+            sendMessage(msg);
         }
 
         /**
@@ -388,9 +405,9 @@ public class AlljoynBus extends A3Bus {
          */
         public void addChannel(AlljoynGroupChannel channel) {
             Log.i(TAG, "mBackgroundHandler.addChannel()");
-            Message msg = mBackgroundHandler.obtainMessage(ADD_CHANNEL);
+            Message msg = obtainMessage(ADD_CHANNEL);
             msg.obj = channel;
-            mBackgroundHandler.sendMessage(msg);
+            sendMessage(msg);
         }
 
         /**
@@ -398,9 +415,9 @@ public class AlljoynBus extends A3Bus {
          */
         public void removeChannel(AlljoynGroupChannel channel) {
             Log.i(TAG, "mBackgroundHandler.removeChannel()");
-            Message msg = mBackgroundHandler.obtainMessage(DEL_CHANNEL);
+            Message msg = obtainMessage(DEL_CHANNEL);
             msg.obj = channel;
-            mBackgroundHandler.sendMessage(msg);
+            sendMessage(msg);
         }
 
         /**
@@ -408,9 +425,9 @@ public class AlljoynBus extends A3Bus {
          */
         public void addService(AlljoynGroupChannel channel) {
             Log.i(TAG, "mBackgroundHandler.addService()");
-            Message msg = mBackgroundHandler.obtainMessage(ADD_SERVICE);
+            Message msg = obtainMessage(ADD_SERVICE);
             msg.obj = channel;
-            mBackgroundHandler.sendMessage(msg);
+            sendMessage(msg);
         }
 
         /**
@@ -421,9 +438,9 @@ public class AlljoynBus extends A3Bus {
          */
         public void disconnect(AlljoynGroupChannel channel) {
             Log.i(TAG, "mBackgroundHandler.disconnect()");
-            Message msg = mBackgroundHandler.obtainMessage(DISCONNECT);
+            Message msg = obtainMessage(DISCONNECT);
             msg.obj = channel;
-            mBackgroundHandler.sendMessage(msg);
+            sendMessage(msg);
         }
 
         /**
@@ -434,9 +451,9 @@ public class AlljoynBus extends A3Bus {
          */
         public void startDiscovery(AlljoynGroupChannel channel) {
             Log.i(TAG, "mBackgroundHandler.startDiscovery()");
-            Message msg = mBackgroundHandler.obtainMessage(START_DISCOVERY);
+            Message msg = obtainMessage(START_DISCOVERY);
             msg.obj = channel;
-            mBackgroundHandler.sendMessage(msg);
+            sendMessage(msg);
         }
 
         /**
@@ -447,72 +464,79 @@ public class AlljoynBus extends A3Bus {
          */
         public void cancelDiscovery(AlljoynGroupChannel channel) {
             Log.i(TAG, "mBackgroundHandler.stopDiscovery()");
-            Message msg = mBackgroundHandler.obtainMessage(CANCEL_DISCOVERY);
+            Message msg = obtainMessage(CANCEL_DISCOVERY);
             msg.obj = channel;
-            mBackgroundHandler.sendMessage(msg);
+            sendMessage(msg);
         }
 
         public void requestName(AlljoynGroupChannel channel) {
             Log.i(TAG, "mBackgroundHandler.requestName()");
-            Message msg = mBackgroundHandler.obtainMessage(REQUEST_NAME);
+            Message msg = obtainMessage(REQUEST_NAME);
             msg.obj = channel;
-            mBackgroundHandler.sendMessage(msg);
+            sendMessage(msg);
         }
 
         public void releaseName(AlljoynGroupChannel channel) {
             Log.i(TAG, "mBackgroundHandler.releaseName()");
-            Message msg = mBackgroundHandler.obtainMessage(RELEASE_NAME);
+            Message msg = obtainMessage(RELEASE_NAME);
             msg.obj = channel;
-            mBackgroundHandler.sendMessage(msg);
+            sendMessage(msg);
         }
 
         public void bindSession(AlljoynGroupChannel channel) {
             Log.i(TAG, "mBackgroundHandler.bindSession()");
-            Message msg = mBackgroundHandler.obtainMessage(BIND_SESSION);
+            Message msg = obtainMessage(BIND_SESSION);
             msg.obj = channel;
-            mBackgroundHandler.sendMessage(msg);
+            sendMessage(msg);
         }
 
         public void unbindSession(AlljoynGroupChannel channel) {
             Log.i(TAG, "mBackgroundHandler.unbindSession()");
-            Message msg = mBackgroundHandler.obtainMessage(UNBIND_SESSION);
+            Message msg = obtainMessage(UNBIND_SESSION);
             msg.obj = channel;
-            mBackgroundHandler.sendMessage(msg);
+            sendMessage(msg);
         }
 
         public void advertise(AlljoynGroupChannel channel) {
             Log.i(TAG, "mBackgroundHandler.advertise()");
-            Message msg = mBackgroundHandler.obtainMessage(ADVERTISE);
+            Message msg = obtainMessage(ADVERTISE);
             msg.obj = channel;
-            mBackgroundHandler.sendMessage(msg);
+            sendMessage(msg);
         }
 
         public void cancelAdvertise(AlljoynGroupChannel channel) {
             Log.i(TAG, "mBackgroundHandler.cancelAdvertise()");
-            Message msg = mBackgroundHandler.obtainMessage(CANCEL_ADVERTISE);
+            Message msg = obtainMessage(CANCEL_ADVERTISE);
             msg.obj = channel;
-            mBackgroundHandler.sendMessage(msg);
+            sendMessage(msg);
         }
 
         public void joinSession(AlljoynGroupChannel channel) {
             Log.i(TAG, "mBackgroundHandler.joinSession()");
-            Message msg = mBackgroundHandler.obtainMessage(JOIN_SESSION);
+            Message msg = obtainMessage(JOIN_SESSION);
             msg.obj = channel;
-            mBackgroundHandler.sendMessage(msg);
+            sendMessage(msg);
         }
 
         public void leaveSession(AlljoynGroupChannel channel) {
             Log.i(TAG, "mBackgroundHandler.leaveSession()");
-            Message msg = mBackgroundHandler.obtainMessage(LEAVE_SESSION);
+            Message msg = obtainMessage(LEAVE_SESSION);
+            msg.obj = channel;
+            sendMessage(msg);
+        }
+
+        public void requestReady(AlljoynGroupChannel channel) {
+            Log.i(TAG, "mBackgroundHandler.requestReady()");
+            Message msg = obtainMessage(REQUEST_READY);
             msg.obj = channel;
-            mBackgroundHandler.sendMessage(msg);
+            sendMessage(msg);
         }
 
         public void sendMessages(AlljoynGroupChannel channel) {
             Log.i(TAG, "mBackgroundHandler.sendMessages()");
-            Message msg = mBackgroundHandler.obtainMessage(SEND_MESSAGES);
+            Message msg = obtainMessage(SEND_MESSAGES);
             msg.obj = channel;
-            mBackgroundHandler.sendMessage(msg);
+            sendMessage(msg);
         }
 
         /**
@@ -569,6 +593,9 @@ public class AlljoynBus extends A3Bus {
                 case SEND_MESSAGES:
                     doSendMessages((AlljoynGroupChannel) msg.obj);
                     break;
+                case REQUEST_READY:
+                    doRequestReady((AlljoynGroupChannel) msg.obj);
+                    break;
                 case EXIT:
                     getLooper().quitSafely();
                     break;
@@ -595,32 +622,72 @@ public class AlljoynBus extends A3Bus {
     private static final int ADD_CHANNEL = 15;
     private static final int ADD_SERVICE = 16;
     private static final int DEL_CHANNEL = 17;
+    private static final int REQUEST_READY = 18;
 
     /**
-     * The instance of the AllJoyn background thread handler.  It is created
+     * The instances of the AllJoyn background thread handler.  They are created
      * when Android decides the Service is needed and is called from the
      * onCreate() method.  When Android decides our Service is no longer
-     * needed, it will call onDestroy(), which spins down the thread.
+     * needed, it will call onDestroy(), which spins down the threads.
      */
-    private BackgroundHandler mBackgroundHandler = null;
+    private BackgroundHandler[] mBackgroundHandlers = null;
+
+    /**
+     * The number of background threads, one by default as the operations of all
+     * the channels used to run serially on the bus thread.
+     */
+    private static int busThreads = 1;
+
+    /**
+     * Lets the operations of different groups run in parallel on several
+     * background threads, e.g. while a node connects to many groups at startup.
+     * It must be called before the service is created.
+     *
+     * Each group, and the discovery channel, is always served by the same thread,
+     * so the operations on a channel keep running in order. Operations on
+     * different channels only share the bus attachments, whose methods are
+     * thread-safe, and the shared attachment, whose connection count is
+     * synchronized in AlljoynSharedBus.
+     * @param threads The number of background threads, at least one.
+     */
+    public static synchronized void setBusThreads(int threads) {
+        if (threads > 0)
+            busThreads = threads;
+    }
 
     /**
      * Since basically our whole reason for being is to spin up a thread to
      * handle long-lived remote operations, we provide this method to do so.
      */
     private void startBusThread() {
-        HandlerThread busThread = new HandlerThread("AlljoynBusBackgroundHandler");
-        busThread.start();
-        mBackgroundHandler = new BackgroundHandler(busThread.getLooper());
+        int threads;
+        synchronized (AlljoynBus.class) {
+            threads = busThreads;
+        }
+        mBackgroundHandlers = new BackgroundHandler[threads];
+        for (int i = 0; i < threads; i++) {
+            HandlerThread busThread = new HandlerThread("AlljoynBusBackgroundHandler_" + i);
+            busThread.start();
+            mBackgroundHandlers[i] = new BackgroundHandler(busThread.getLooper());
+        }
     }
 
     /**
      * When Android decides that our Service is no longer needed, we need to
-     * tear down the thread that is servicing our long-lived remote operations.
+     * tear down the threads that are servicing our long-lived remote operations.
      * This method does so.
      */
     private void stopBusThread() {
-        mBackgroundHandler.exit();
+        for (BackgroundHandler backgroundHandler : mBackgroundHandlers)
+            backgroundHandler.exit();
+    }
+
+    /**
+     * All the operations on the channels of a group run on the same background
+     * thread, so they keep being executed in order, also across reconnections.
+     */
+    private BackgroundHandler getBackgroundHandler(AlljoynGroupChannel channel) {
+        return mBackgroundHandlers[(channel.getGroupName().hashCode() & Integer.MAX_VALUE) % mBackgroundHandlers.length];
     }
 
     /**
@@ -668,7 +735,7 @@ public class AlljoynBus extends A3Bus {
         mBus.setDebugLevel("ALLJOYN_JAVA", 0);
         if(channel.getGroupName().equals(A3DiscoveryDescriptor.DISCOVERY_GROUP_NAME))
             mBus.registerBusListener(mBusListener);
-        Status status = mBus.connect();
+        Status status = channel.isOnSharedBus() ? AlljoynSharedBus.connect() : mBus.connect();
         if (status == Status.OK) {
             channel.setBusState(BusState.CONNECTED);
         }else {
@@ -727,7 +794,10 @@ public class AlljoynBus extends A3Bus {
         assert (channel.getBusState() == BusState.CONNECTED);
         if(channel.getGroupName().equals(A3DiscoveryDescriptor.DISCOVERY_GROUP_NAME))
             channel.getBus().unregisterBusListener(mBusListener);
-        channel.getBus().disconnect();
+        if(channel.isOnSharedBus())
+            AlljoynSharedBus.disconnect();
+        else
+            channel.getBus().disconnect();
         channel.setBusState(BusState.DISCONNECTED);
         return true;
     }
@@ -968,7 +1038,6 @@ public class AlljoynBus extends A3Bus {
                 //SignalEmitter emitter = new SignalEmitter(channel.getService(), mUseSessionId, SignalEmitter.GlobalBroadcast.Off);
                 //channel.setServiceSignalEmitterInterface(emitter.getInterface(AlljoynServiceInterface.class), true);
 
-                postJoinWait(POS_CONNECTION_WAIT_TIME);
                 channel.handleEvent(AlljoynEventHandler.AlljoynEvent.SESSION_JOINED, null);
             } else {
                 application.busError(A3Application.Module.USE, "Unable to join chat session: (" + status + ")");
@@ -977,20 +1046,20 @@ public class AlljoynBus extends A3Bus {
         }
     }
 
-    /** Additional time to avoid alljoyn error **/
-    private static int POS_CONNECTION_WAIT_TIME = 1000;
-
     /**
-     * Gives time to the Alljoyn bus to be properly set before communication starts, avoiding an
-     * error noticed experimentally.
+     * Asks the service of a joined session whether it is ready to be used, i.e. whether it can
+     * already emit the signals of the session. The service answers with a ReceiveReady signal,
+     * which completes the join. If it can't answer yet, the request is repeated by the channel.
      */
-    private void postJoinWait(int time){
+    private void doRequestReady(AlljoynGroupChannel channel) {
+        Log.i(TAG, "doRequestReady(" + channel.getGroupName() + ")");
+        if (channel.getSessionId() == -1)
+            return;
         try {
-            synchronized (this) {
-                this.wait(time);
-            }
-        } catch (InterruptedException e) {
-            e.printStackTrace();
+            if (!channel.sendReady())
+                Log.i(TAG, "doRequestReady(): session of " + channel.getGroupName() + " not ready yet");
+        } catch (BusException ex) {
+            Log.i(TAG, "doRequestReady(): " + ex.getMessage());
         }
     }
 
@@ -1056,13 +1125,11 @@ public class AlljoynBus extends A3Bus {
     }
 
     /**
-     * The AlljoynGroupChannel background thread may be waiting for notification before
-     * disconnecting a channel
+     * The AlljoynGroupChannel may be waiting for its outbound to be flushed before
+     * disconnecting
      */
     private void notifyAlljoynGroupChannel(AlljoynGroupChannel channel){
-        synchronized (channel) {
-            channel.notifyAll();
-        }
+        channel.notifyOutboundFlushed();
     }
 
     /**
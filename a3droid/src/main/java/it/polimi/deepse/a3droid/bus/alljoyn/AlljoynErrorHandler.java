@@ -7,18 +7,22 @@ import org.alljoyn.bus.Status;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Random;
 
 import it.polimi.deepse.a3droid.a3.exceptions.A3GroupCreationException;
 import it.polimi.deepse.a3droid.a3.exceptions.A3GroupDuplicationException;
 import it.polimi.deepse.a3droid.a3.exceptions.A3GroupJoinException;
 import it.polimi.deepse.a3droid.a3.exceptions.A3MessageDeliveryException;
-import it.polimi.deepse.a3droid.utility.Fibonacci;
+import it.polimi.deepse.a3droid.pattern.Timer;
+import it.polimi.deepse.a3droid.pattern.TimerInterface;
 
 /**
  * Handles three types of error: from service setup, from channel setup and from the bus.
  * Whenever an error cannot be handled by Alljoyn layer, it is scaled to A3 layer.
+ * Failed operations are retried by scheduled timers, never by waiting on the thread which reported
+ * the error, which is usually the bus thread shared by all the channels.
  */
-public class AlljoynErrorHandler{
+public class AlljoynErrorHandler implements TimerInterface{
 
     protected final String TAG;
 
@@ -27,6 +31,10 @@ public class AlljoynErrorHandler{
     private Map<AlljoynService.AlljoynServiceState, Integer> serviceRetries;
     private static final int MAX_CHANNEL_RETRIES = 3;
     private static final int MAX_SERVICE_RETRIES = 3;
+    private final Random random = new Random();
+    /**The retries waiting to be performed, by their event, so that they can be aborted on disconnection.*/
+    private final Map<Integer, Timer> pendingRetries = new HashMap<>();
+    private boolean cancelled = false;
 
 
     public AlljoynErrorHandler(AlljoynGroupChannel channel){
@@ -83,11 +91,7 @@ public class AlljoynErrorHandler{
                     case ALLJOYN_JOINSESSION_REPLY_CONNECT_FAILED:
                     case ALLJOYN_JOINSESSION_REPLY_FAILED:
                     case ALLJOYN_JOINSESSION_REPLY_ALREADY_JOINED:
-                        if(channelRetries.get(AlljoynBus.AlljoynChannelState.REGISTERED) < MAX_CHANNEL_RETRIES) {
-                            waitToRetry(channelRetries.get(AlljoynBus.AlljoynChannelState.REGISTERED));
-                            incChannelRetries(AlljoynBus.AlljoynChannelState.REGISTERED);
-                            channel.joinGroup();
-                        }else
+                        if(!scheduleChannelRetry(AlljoynBus.AlljoynChannelState.REGISTERED, RETRY_JOIN_GROUP_EVENT))
                             channel.handleError(new A3GroupJoinException(alljoynStatus.toString()));
                         break;
                     default:
@@ -112,11 +116,7 @@ public class AlljoynErrorHandler{
                         //channel.handleError(new A3GroupDuplicationException(alljoynStatus.toString()));
                         break;
                     case BUS_NOT_CONNECTED:
-                        if(serviceRetries.get(AlljoynService.AlljoynServiceState.REGISTERED) < MAX_SERVICE_RETRIES) {
-                            waitToRetry(serviceRetries.get(AlljoynService.AlljoynServiceState.REGISTERED));
-                            incServiceRetries(AlljoynService.AlljoynServiceState.REGISTERED);
-                            channel.createGroup();
-                        }else
+                        if(!scheduleServiceRetry(AlljoynService.AlljoynServiceState.REGISTERED))
                             channel.handleError(new A3GroupCreationException(alljoynStatus.toString()));
                         break;
                     default:
@@ -129,13 +129,8 @@ public class AlljoynErrorHandler{
                 switch (alljoynStatus){
                     case BUS_NOT_CONNECTED:
                     case ALLJOYN_BINDSESSIONPORT_REPLY_FAILED:
-                        if(serviceRetries.get(AlljoynService.AlljoynServiceState.NAMED) < MAX_SERVICE_RETRIES) {
-                                waitToRetry(serviceRetries.get(AlljoynService.AlljoynServiceState.NAMED));
-                                incServiceRetries(AlljoynService.AlljoynServiceState.NAMED);
-                                channel.createGroup();
-                        }else {
-                                channel.handleError(new A3GroupCreationException(alljoynStatus.toString()));
-                        }
+                        if(!scheduleServiceRetry(AlljoynService.AlljoynServiceState.NAMED))
+                            channel.handleError(new A3GroupCreationException(alljoynStatus.toString()));
                         break;
                     case ALLJOYN_BINDSESSIONPORT_REPLY_ALREADY_EXISTS:
                         channel.handleError(new A3GroupDuplicationException(alljoynStatus.toString()));
@@ -153,13 +148,8 @@ public class AlljoynErrorHandler{
                     case BUS_NOT_CONNECTED:
                     case ALLJOYN_ADVERTISENAME_REPLY_FAILED:
                     case ALLJOYN_ADVERTISENAME_REPLY_TRANSPORT_NOT_AVAILABLE:
-                        if(serviceRetries.get(AlljoynService.AlljoynServiceState.BOUND) < MAX_SERVICE_RETRIES) {
-                                waitToRetry(serviceRetries.get(AlljoynService.AlljoynServiceState.BOUND));
-                                incServiceRetries(AlljoynService.AlljoynServiceState.BOUND);
-                                channel.createGroup();
-                        }else {
-                                channel.handleError(new A3GroupCreationException(alljoynStatus.toString()));
-                        }
+                        if(!scheduleServiceRetry(AlljoynService.AlljoynServiceState.BOUND))
+                            channel.handleError(new A3GroupCreationException(alljoynStatus.toString()));
                         break;
                     case ALLJOYN_ADVERTISENAME_REPLY_ALREADY_ADVERTISING:
                         channel.handleError(new A3GroupDuplicationException(alljoynStatus.toString()));
@@ -176,36 +166,115 @@ public class AlljoynErrorHandler{
         }
     }
 
-    private void incChannelRetries(AlljoynBus.AlljoynChannelState state){
-        assert ((channelRetries.get(state) + 1) < MAX_CHANNEL_RETRIES);
-        channelRetries.put(state, channelRetries.get(state) + 1);
+    /**
+     * Schedules a new attempt of the channel operation which failed in the given state, unless its
+     * retry budget is spent. Each operation has its own budget.
+     * @return false if the operation can't be retried anymore
+     */
+    private synchronized boolean scheduleChannelRetry(AlljoynBus.AlljoynChannelState state, int retryEvent){
+        int retry = channelRetries.get(state);
+        if(retry >= MAX_CHANNEL_RETRIES)
+            return false;
+        channelRetries.put(state, retry + 1);
+        scheduleRetry(retryEvent, getRetryWait(retry));
+        return true;
+    }
+
+    /**
+     * Schedules a new attempt of the service operation which failed in the given state, i.e. of the
+     * group creation from that state, unless its retry budget is spent. Each operation has its own budget.
+     * @return false if the operation can't be retried anymore
+     */
+    private synchronized boolean scheduleServiceRetry(AlljoynService.AlljoynServiceState state){
+        int retry = serviceRetries.get(state);
+        if(retry >= MAX_SERVICE_RETRIES)
+            return false;
+        serviceRetries.put(state, retry + 1);
+        scheduleRetry(RETRY_CREATE_GROUP_EVENT, getRetryWait(retry));
+        return true;
     }
 
-    private void incServiceRetries(AlljoynService.AlljoynServiceState state){
-        assert ((serviceRetries.get(state) + 1) < MAX_SERVICE_RETRIES);
-        serviceRetries.put(state, serviceRetries.get(state) + 1);
+    /**
+     * Starts the timer of a retry and keeps its handle, replacing the previous retry of the same event.
+     * Nothing is scheduled once the retries have been cancelled, the channel being disconnected.
+     */
+    private void scheduleRetry(int retryEvent, int wait){
+        if(cancelled)
+            return;
+        Timer retry = new Timer(this, retryEvent, wait);
+        Timer previous = pendingRetries.put(retryEvent, retry);
+        if(previous != null)
+            previous.abort();
+        retry.start();
     }
 
-    public void resetChannelRetry(){
+    /**
+     * Aborts the pending retries and prevents new ones from being scheduled, so that no operation is
+     * retried on a channel which has been disconnected.
+     */
+    public synchronized void cancelRetries(){
+        cancelled = true;
+        for(Timer retry : pendingRetries.values())
+            retry.abort();
+        pendingRetries.clear();
+    }
+
+    public synchronized void resetChannelRetry(){
         for(AlljoynBus.AlljoynChannelState state : AlljoynBus.AlljoynChannelState.values())
             channelRetries.put(state, 0);
     }
 
-    public void resetServiceRetry(){
+    public synchronized void resetServiceRetry(){
         for(AlljoynService.AlljoynServiceState state : AlljoynService.AlljoynServiceState.values())
             serviceRetries.put(state, 0);
     }
 
-    private void waitToRetry(int retry){
-        try {
-            synchronized (this) {
-                this.wait(Fibonacci.fib(retry) * 250);//250, 500, 750, 1250...
+    /**
+     * Exponential backoff with jitter: the n-th retry waits between half and all of
+     * BASE_RETRY_WAIT * 2^n, up to MAX_RETRY_WAIT, so that channels failing together don't retry together.
+     * @param retry the number of retries already done
+     * @return the time to wait before the retry in milliseconds
+     */
+    private int getRetryWait(int retry){
+        int backoff = Math.min(MAX_RETRY_WAIT, BASE_RETRY_WAIT << retry);
+        return backoff / 2 + random.nextInt(backoff / 2 + 1);
+    }
+
+    /**
+     * The retries are handled on the thread of the channel, which also cancels them when disconnecting.
+     */
+    public void handleTimeEvent(final int reason, Object object){
+        channel.post(new Runnable() {
+            @Override
+            public void run() {
+                retry(reason);
             }
-        } catch (InterruptedException e) {
-            e.printStackTrace();
+        });
+    }
+
+    private void retry(int reason){
+        synchronized (this){
+            if(cancelled)
+                return;
+            pendingRetries.remove(reason);
+        }
+        switch (reason){
+            case RETRY_JOIN_GROUP_EVENT:
+                channel.joinGroup();
+                break;
+            case RETRY_CREATE_GROUP_EVENT:
+                channel.createGroup();
+                break;
+            default:
+                break;
         }
     }
 
+    private static final int RETRY_JOIN_GROUP_EVENT = 0;
+    private static final int RETRY_CREATE_GROUP_EVENT = 1;
+    private static final int BASE_RETRY_WAIT = 250;
+    private static final int MAX_RETRY_WAIT = 4000;
+
     public static final int CHANNEL = 0;    /** Error occurred in a channel setup operation */
     public static final int SERVICE  = 1;   /** Error occurred in a service setup operation */
     public static final int BUS  = 2;       /** Error occurred in the bus */
@@ -45,6 +45,7 @@ public class AlljoynEventHandler implements TimerInterface{
         SESSION_ADVERTISED,
         SESSION_DESTROYED,
         SESSION_JOINED,
+        SESSION_READY,
         SESSION_LEFT,
         SESSION_LOST,
         MEMBER_JOINED,
@@ -86,13 +87,20 @@ public class AlljoynEventHandler implements TimerInterface{
                 channel.setServiceState(AlljoynService.AlljoynServiceState.BOUND);
                 break;
             case SESSION_JOINED:
-                channel.handleEvent(A3GroupEvent.A3GroupEventType.GROUP_JOINED);
-                channel.setChannelState(AlljoynBus.AlljoynChannelState.JOINT);
+                awaitSessionReady();
+                break;
+            case SESSION_READY:
+                if(stopAwaitingSessionReady()) {
+                    channel.handleEvent(A3GroupEvent.A3GroupEventType.GROUP_JOINED);
+                    channel.setChannelState(AlljoynBus.AlljoynChannelState.JOINT);
+                }
                 break;
             case SESSION_LOST:
+                stopAwaitingSessionReady();
                 handleSessionLostEvent();
                 break;
             case SESSION_LEFT:
+                stopAwaitingSessionReady();
                 channel.handleEvent(A3GroupEvent.A3GroupEventType.GROUP_LEFT);
                 channel.setChannelState(AlljoynBus.AlljoynChannelState.REGISTERED);
                 break;
@@ -107,11 +115,74 @@ public class AlljoynEventHandler implements TimerInterface{
         }
     }
 
-    public void handleTimeEvent(int why, Object object){
+    /**
+     * The session has been joined, but it can only be used once its service can emit signals on it
+     * and this channel receives them. The channel asks the service until it answers, and the session
+     * is considered ready anyway after MAX_READY_REQUESTS requests.
+     */
+    private synchronized void awaitSessionReady(){
+        stopAwaitingSessionReady();
+        readyRequests = 0;
+        requestSessionReady();
+    }
+
+    private synchronized void requestSessionReady(){
+        readyTimer = new Timer(this, SESSION_READY_TIMEOUT_EVENT, READY_TIMEOUT << readyRequests);
+        readyRequests++;
+        readyTimer.start();
+        channel.requestReady();
+    }
+
+    /**
+     * @return true if the channel was waiting for the session to be ready
+     */
+    private synchronized boolean stopAwaitingSessionReady(){
+        if(readyTimer == null)
+            return false;
+        readyTimer.abort();
+        readyTimer = null;
+        return true;
+    }
+
+    private void handleSessionReadyTimeout(){
+        if(!retrySessionReady()) {
+            Log.i(TAG, "handleSessionReadyTimeout(): no answer from the service, using the session anyway");
+            handleEvent(AlljoynEvent.SESSION_READY, null);
+        }
+    }
+
+    /**
+     * @return false if the service didn't answer to any of the MAX_READY_REQUESTS requests
+     */
+    private synchronized boolean retrySessionReady(){
+        if(readyTimer == null)
+            return true;
+        if(readyRequests == MAX_READY_REQUESTS)
+            return false;
+        requestSessionReady();
+        return true;
+    }
+
+    /**
+     * The timeouts are handled on the thread of the channel, as they reconnect it or complete its join.
+     */
+    public void handleTimeEvent(final int why, final Object object){
+        channel.post(new Runnable() {
+            @Override
+            public void run() {
+                handleTimeout(why);
+            }
+        });
+    }
+
+    private void handleTimeout(int why){
         switch (why){
             case WAIT_AND_RECONNECT_EVENT:
                 channel.reconnect();
                 break;
+            case SESSION_READY_TIMEOUT_EVENT:
+                handleSessionReadyTimeout();
+                break;
             default:
                 break;
         }
@@ -120,4 +191,11 @@ public class AlljoynEventHandler implements TimerInterface{
     private static final int WAIT_AND_RECONNECT_EVENT = 0;
     private static final int WAIT_AND_RECONNECT_FT = 0;
     private static final int WAIT_AND_RECONNECT_RT = 2000;
+    private static final int SESSION_READY_TIMEOUT_EVENT = 1;
+
+    /**The time to wait for the first answer of the service, doubled at each new request.*/
+    private static final int READY_TIMEOUT = 250;
+    private static final int MAX_READY_REQUESTS = 4;
+    private Timer readyTimer = null;
+    private int readyRequests = 0;
 }
@@ -9,6 +9,10 @@ import org.alljoyn.bus.BusException;
 import org.alljoyn.bus.Status;
 import org.alljoyn.bus.annotation.BusSignalHandler;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
 import it.polimi.deepse.a3droid.a3.A3GroupChannel;
 import it.polimi.deepse.a3droid.a3.A3Message;
 import it.polimi.deepse.a3droid.a3.A3GroupDescriptor;
@@ -16,6 +20,8 @@ import it.polimi.deepse.a3droid.a3.A3Application;
 import it.polimi.deepse.a3droid.a3.A3FollowerRole;
 import it.polimi.deepse.a3droid.a3.A3Node;
 import it.polimi.deepse.a3droid.a3.A3SupervisorRole;
+import it.polimi.deepse.a3droid.pattern.Promise;
+import it.polimi.deepse.a3droid.pattern.Timer;
 
 /**
  * TODO: Describe
@@ -43,7 +49,7 @@ public class AlljoynGroupChannel extends A3GroupChannel {
         assert(descriptor != null);
         setGroupNameSuffix(".G" + getBus().getGlobalGUIDString().substring(0, 6));
         setService(new AlljoynService(groupName, getGroupNameSuffix()));
-        start();
+        startLooper();
     }
 
     /**
@@ -57,11 +63,28 @@ public class AlljoynGroupChannel extends A3GroupChannel {
 
     /**
      * Leaves a group and destroy it if hosting, them disconnects from the alljoyn bus.
+     * Messages still in the outbound are given DISCONNECT_FLUSH_TIMEOUT milliseconds to be sent.
      */
     @Override
     public void disconnect(){
+        disconnect(DISCONNECT_FLUSH_TIMEOUT);
+    }
+
+    /**
+     * Leaves a group and destroy it if hosting, them disconnects from the alljoyn bus, without
+     * blocking neither the caller nor the channel thread.
+     * @param flushTimeout the milliseconds given to the messages still in the outbound to be sent,
+     *                     after which they are dropped. With 0 they are dropped immediately.
+     * @return completed when the channel disconnects, with true if the outbound had been flushed
+     * and false if some messages had been dropped
+     */
+    @Override
+    public Promise<Boolean> disconnect(long flushTimeout){
+        Promise<Boolean> disconnection = new Promise<>();
         Message message = mHandler.obtainMessage(HANDLE_DISCONNECT_EVENT);
+        message.obj = new PendingDisconnection(disconnection, flushTimeout);
         mHandler.sendMessage(message);
+        return disconnection;
     }
 
     @Override
@@ -120,6 +143,22 @@ public class AlljoynGroupChannel extends A3GroupChannel {
         getServiceInterface().sendControl(message);
     }
 
+    /**
+     * Asks the service whether the session just joined is ready to be used. The bus thread makes the
+     * call, and the answer comes back as a ReceiveReady signal.
+     */
+    public void requestReady(){
+        notifyObservers(READY_REQUESTED_EVENT);
+    }
+
+    /**
+     * @return false if the service can't be asked yet or can't answer yet
+     */
+    public boolean sendReady() throws BusException {
+        AlljoynServiceInterface serviceInterface = getServiceInterface();
+        return serviceInterface != null && serviceInterface.sendReady(channelId);
+    }
+
     public void handleEvent(AlljoynEventHandler.AlljoynEvent event, Object arg){
         eventHandler.handleEvent(event, arg);
     }
@@ -149,6 +188,14 @@ public class AlljoynGroupChannel extends A3GroupChannel {
         errorHandler.handleError(errorSide, ex);
     }
 
+    /**
+     * Runs a task on the thread of this channel, e.g. the work of a timeout, so that it doesn't run on the
+     * node's timer service thread.
+     */
+    void post(Runnable task){
+        mHandler.post(task);
+    }
+
     public void prepareHandler(){
         mHandler = new Handler(getLooper()) {
             @Override
@@ -158,7 +205,13 @@ public class AlljoynGroupChannel extends A3GroupChannel {
                         doConnect();
                         break;
                     case HANDLE_DISCONNECT_EVENT:
-                        waitBeforeDisconnection();
+                        flushBeforeDisconnection((PendingDisconnection) msg.obj);
+                        break;
+                    case HANDLE_OUTBOUND_FLUSHED_EVENT:
+                        onOutboundFlushed();
+                        break;
+                    case HANDLE_FLUSH_DEADLINE_EVENT:
+                        onFlushDeadline((PendingDisconnection) msg.obj);
                         break;
                     case HANDLE_CREATE_GROUP_EVENT:
                         doCreateGroup();
@@ -185,14 +238,21 @@ public class AlljoynGroupChannel extends A3GroupChannel {
     private static final int HANDLE_DESTROY_GROUP_EVENT = 4;
     private static final int HANDLE_JOIN_GROUP_EVENT = 5;
     private static final int HANDLE_LEAVE_GROUP_EVENT = 6;
+    private static final int HANDLE_OUTBOUND_FLUSHED_EVENT = 7;
+    private static final int HANDLE_FLUSH_DEADLINE_EVENT = 8;
 
     /**
      * Connects to the alljoyn bus and either joins a group or created if it hasn't been found.
      */
     private void doConnect(){
+        boolean found = application.isGroupFound(groupName);
+        if(found) {
+            setGroupFoundTime(application.getGroupFoundTime(groupName));
+            useSharedBus();
+        }
         super.connect();
         initializeHandlers();
-        if(application.isGroupFound(groupName)) {
+        if(found) {
             doJoinGroup();
         }else
             doCreateGroup();
@@ -200,23 +260,102 @@ public class AlljoynGroupChannel extends A3GroupChannel {
 
     /**
      * Gives time to messages to be sent before disconnecting whenever the channel state is
-     * still JOINT
+     * still JOINT. The channel thread doesn't wait: the disconnection completes when the bus
+     * reports the outbound as flushed or when the flush deadline passes, whichever comes first.
      */
-    private void waitBeforeDisconnection(){
-        while(getChannelState() == AlljoynBus.AlljoynChannelState.JOINT &&
-                !isOutboundEmpty()) {
-            try {
-                synchronized (this) {
-                    Log.i(TAG, "waitBeforeDisconnection(): waiting for outbound to be clear");
-                    this.wait();
-                }
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
+    private void flushBeforeDisconnection(PendingDisconnection disconnection){
+        if(pendingDisconnection != null) {
+            //Already disconnecting: the earliest deadline wins
+            pendingDisconnection.promises.addAll(disconnection.promises);
+            if(disconnection.flushTimeout <= 0)
+                completeDisconnection(isOutboundEmpty());
+            else if(disconnection.flushTimeout < pendingDisconnection.remaining())
+                scheduleFlushDeadline(disconnection.flushTimeout);
+            return;
+        }
+        pendingDisconnection = disconnection;
+        if(getChannelState() != AlljoynBus.AlljoynChannelState.JOINT || isOutboundEmpty())
+            completeDisconnection(true);
+        else if(disconnection.flushTimeout <= 0)
+            completeDisconnection(false);
+        else {
+            Log.i(TAG, "flushBeforeDisconnection(): waiting up to " + disconnection.flushTimeout + "ms for outbound to be clear");
+            scheduleFlushDeadline(disconnection.flushTimeout);
+        }
+    }
+
+    private void scheduleFlushDeadline(long timeout){
+        if(flushDeadline != null)
+            flushDeadline.abort();
+        pendingDisconnection.deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        flushDeadline = new Timer(this, FLUSH_DEADLINE_EVENT, (int) timeout, pendingDisconnection);
+        flushDeadline.start();
+    }
+
+    /**
+     * Called by the bus when it stops sending the outbound, because it is empty or because of an error.
+     */
+    public void notifyOutboundFlushed(){
+        mHandler.sendMessage(mHandler.obtainMessage(HANDLE_OUTBOUND_FLUSHED_EVENT));
+    }
+
+    private void onOutboundFlushed(){
+        if(pendingDisconnection != null &&
+                (getChannelState() != AlljoynBus.AlljoynChannelState.JOINT || isOutboundEmpty()))
+            completeDisconnection(true);
+    }
+
+    private void onFlushDeadline(PendingDisconnection disconnection){
+        if(disconnection == pendingDisconnection)
+            completeDisconnection(isOutboundEmpty());
+    }
+
+    private void completeDisconnection(boolean flushed){
+        if(flushDeadline != null) {
+            flushDeadline.abort();
+            flushDeadline = null;
         }
+        if(!flushed)
+            Log.i(TAG, "completeDisconnection(): dropping " + clearOutbound() + " outbound messages");
+        PendingDisconnection disconnection = pendingDisconnection;
+        pendingDisconnection = null;
         doDisconnect();
+        for(Promise<Boolean> promise : disconnection.promises)
+            promise.complete(flushed);
     }
 
+    @Override
+    public void handleTimeEvent(int reason, Object object) {
+        if(reason == FLUSH_DEADLINE_EVENT)
+            mHandler.sendMessage(mHandler.obtainMessage(HANDLE_FLUSH_DEADLINE_EVENT, object));
+        else
+            super.handleTimeEvent(reason, object);
+    }
+
+    /**A disconnection waiting for the outbound to be flushed, only accessed by the channel thread.*/
+    private static class PendingDisconnection {
+
+        final List<Promise<Boolean>> promises = new ArrayList<>();
+        final long flushTimeout;
+        long deadline;
+
+        PendingDisconnection(Promise<Boolean> promise, long flushTimeout){
+            this.promises.add(promise);
+            this.flushTimeout = flushTimeout;
+        }
+
+        long remaining(){
+            return TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+        }
+    }
+
+    private PendingDisconnection pendingDisconnection = null;
+    private Timer flushDeadline = null;
+
+    /**The default time given to the outbound to be flushed before disconnecting.*/
+    public static final long DISCONNECT_FLUSH_TIMEOUT = 5000;
+    private static final int FLUSH_DEADLINE_EVENT = 10;
+
     /**
      * Leaves a group and destroy it if hosting, them disconnects from the alljoyn bus.
      */
@@ -264,45 +403,89 @@ public class AlljoynGroupChannel extends A3GroupChannel {
      */
     @BusSignalHandler(iface = AlljoynBus.SERVICE_PATH + ".AlljoynServiceInterface", signal = "ReceiveUnicast")
     public void ReceiveUnicast(A3Message message) throws BusException {
-        if(isAddressed(message.addresses))
+        if(isFromOwnSession() && isAddressed(message.addresses))
             receiveUnicast(message);
     }
 
     @BusSignalHandler(iface = AlljoynBus.SERVICE_PATH + ".AlljoynServiceInterface", signal = "ReceiveMultiCast")
     public void ReceiveMultiCast(A3Message message) throws BusException {
-        if(isAddressed(message.addresses))
+        if(isFromOwnSession() && isAddressed(message.addresses))
             receiveMulticast(message);
     }
 
     @BusSignalHandler(iface = AlljoynBus.SERVICE_PATH + ".AlljoynServiceInterface", signal = "ReceiveBroadcast")
     public void ReceiveBroadcast(A3Message message) throws BusException {
-        receiveBroadcast(message);
+        if(isFromOwnSession())
+            receiveBroadcast(message);
     }
 
     @BusSignalHandler(iface = AlljoynBus.SERVICE_PATH + ".AlljoynServiceInterface", signal = "ReceiveControl")
     public void ReceiveControl(A3Message message) throws BusException {
-        if(message.addresses.length == 0 || isAddressed(message.addresses))
+        if(isFromOwnSession() && (message.addresses.length == 0 || isAddressed(message.addresses)))
             receiveControl(message);
     }
 
+    @BusSignalHandler(iface = AlljoynBus.SERVICE_PATH + ".AlljoynServiceInterface", signal = "ReceiveReady")
+    public void ReceiveReady(String address) throws BusException {
+        if(isFromOwnSession() && address.equals(getChannelId()))
+            handleEvent(AlljoynEventHandler.AlljoynEvent.SESSION_READY, null);
+    }
+
     public boolean isHosting() {
         return hosting;
     }
 
-    public BusAttachment getBus(){
+    /**
+     * @return the bus attachment of this channel, created the first time it is needed unless
+     * the channel uses the shared one
+     */
+    public synchronized BusAttachment getBus(){
+        if(mBus == null)
+            mBus = new BusAttachment(AlljoynBus.SERVICE_PATH, BusAttachment.RemoteMessage.Receive);
         return mBus;
     }
 
-    public void setBus(BusAttachment bus){
+    public synchronized void setBus(BusAttachment bus){
         mBus = bus;
     }
 
+    /**
+     * Makes this channel use the node's shared bus attachment, if enabled, instead of its own.
+     * It must be called before connecting to the bus, and never on a hosting channel, which keeps its
+     * own attachment, whose GUID names its group. The own attachment, never connected, is released.
+     * @see AlljoynSharedBus
+     */
+    public synchronized void useSharedBus(){
+        if(!sharedBus && AlljoynSharedBus.isEnabled()) {
+            if(mBus != null)
+                mBus.release();
+            mBus = AlljoynSharedBus.getBus();
+            sharedBus = true;
+        }
+    }
+
+    public synchronized boolean isOnSharedBus(){
+        return sharedBus;
+    }
+
+    /**
+     * The signal handlers of all the channels on the shared bus attachment receive the signals of
+     * all its sessions, so each channel only takes the ones of the session it joined.
+     * @return true if the signal being handled comes from the session of this channel
+     */
+    private boolean isFromOwnSession(){
+        return !isOnSharedBus() || getBus().getMessageContext().sessionId == getSessionId();
+    }
+
     /**
      * The bus attachment is the object that provides AllJoyn services to Java
      * clients.  Pretty much all communiation with AllJoyn is going to go through
      * this obejct.
      */
-    private BusAttachment mBus = new BusAttachment(AlljoynBus.SERVICE_PATH, BusAttachment.RemoteMessage.Receive);
+    private BusAttachment mBus = null;
+
+    /** True if mBus is the node's shared bus attachment **/
+    private boolean sharedBus = false;
 
     /** Service interface used to create signals in the bus **/
     public AlljoynServiceInterface getServiceInterface() {
@@ -323,6 +506,7 @@ public class AlljoynGroupChannel extends A3GroupChannel {
     }
 
     private void finalizeHandlers(){
+        errorHandler.cancelRetries();
         eventHandler.quit();
     }
 
@@ -398,6 +582,12 @@ public class AlljoynGroupChannel extends A3GroupChannel {
      */
     public static final String CHANNEL_STATE_CHANGED_EVENT = "CHANNEL_STATE_CHANGED_EVENT";
 
+    /**
+     * The object we use in notifications to ask the bus to check whether a
+     * joined session is ready to be used.
+     */
+    public static final String READY_REQUESTED_EVENT = "READY_REQUESTED_EVENT";
+
     /**
      * Get the state of the "use" channel.
      */
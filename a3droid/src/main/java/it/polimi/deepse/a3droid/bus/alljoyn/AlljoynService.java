@@ -49,6 +49,16 @@ class AlljoynService implements BusObject, AlljoynServiceInterface {
         return true;
     }
 
+    @Override
+    @BusMethod(signature = "s", replySignature = "b")
+    public boolean sendReady(String address) throws BusException {
+        AlljoynServiceInterface emitter = this.serviceSignalEmitterInterface;
+        if(emitter == null)
+            return false;
+        emitter.ReceiveReady(address);
+        return true;
+    }
+
     /** Bellow methods are empty because they are handled by BusSignalHandler methods at @link AlljoynGroupChannel class**/
     public void ReceiveUnicast(A3Message message) throws BusException {}
 
@@ -58,6 +68,8 @@ class AlljoynService implements BusObject, AlljoynServiceInterface {
 
     public void ReceiveControl(A3Message message) throws BusException {}
 
+    public void ReceiveReady(String address) throws BusException {}
+
     private synchronized void setGroupName(String name) {
         groupName = name;
     }
@@ -81,7 +93,7 @@ class AlljoynService implements BusObject, AlljoynServiceInterface {
     /**
      * This interface is used for emitting bus signals in the bus, not calling methods
      */
-    private AlljoynServiceInterface serviceSignalEmitterInterface;
+    private volatile AlljoynServiceInterface serviceSignalEmitterInterface;
 
     /**
      * Enumeration of the states of a hosted chat channel.  This lets us make a
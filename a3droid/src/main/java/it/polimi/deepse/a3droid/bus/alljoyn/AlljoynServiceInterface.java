@@ -34,6 +34,15 @@ public interface AlljoynServiceInterface{
     @BusMethod(signature = "(sisayas)", replySignature = "b")
     boolean sendControl(A3Message message) throws BusException;
 
+    /*
+     * Called by a node which has just joined the session, to know when the session is ready to be used.
+     * The service answers with a ReceiveReady signal addressed to the node, so when the node receives it
+     * both its bus methods and its signal handlers are known to work. The reply is false if the service
+     * can't emit signals on the session yet.
+     */
+    @BusMethod(signature = "s", replySignature = "b")
+    boolean sendReady(String address) throws BusException;
+
     /*
      * The BusSignal annotation signifies that this function should be used as
      * part of the AllJoyn interface.  The runtime is smart enough to figure
@@ -54,4 +63,7 @@ public interface AlljoynServiceInterface{
     @BusSignal(signature = "(sisayas)")
     void ReceiveControl(A3Message message) throws BusException;
 
+    @BusSignal(signature = "s")
+    void ReceiveReady(String address) throws BusException;
+
 }
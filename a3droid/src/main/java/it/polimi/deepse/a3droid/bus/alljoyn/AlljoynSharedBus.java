@@ -0,0 +1,65 @@
+package it.polimi.deepse.a3droid.bus.alljoyn;
+
+import org.alljoyn.bus.BusAttachment;
+import org.alljoyn.bus.Status;
+
+/**
+ * A single bus attachment shared by the channels of the node, instead of one attachment, and so one
+ * connection to the router with its own threads, per channel. It is disabled by default and must be
+ * enabled before the AlljoynBus service is created.
+ *
+ * The channels joining groups hosted by other nodes, and the discovery channel, use the shared
+ * attachment: each group is a different session on it, and the channels ignore the signals of the
+ * sessions of the other groups. A channel hosting its group keeps its own attachment, since the
+ * sessions hosted by an attachment are all bound to the same contact port, and the joiners couldn't
+ * tell two groups hosted on the same attachment apart.
+ */
+public class AlljoynSharedBus {
+
+    private static BusAttachment bus = null;
+
+    /**The number of channels connected to the shared attachment.*/
+    private static int connections = 0;
+
+    /**
+     * Enables the shared bus attachment. It has no effect if it is already enabled.
+     */
+    public static synchronized void enable() {
+        if (bus == null)
+            bus = new BusAttachment(AlljoynBus.SERVICE_PATH, BusAttachment.RemoteMessage.Receive);
+    }
+
+    public static synchronized boolean isEnabled() {
+        return bus != null;
+    }
+
+    /**
+     * @return the shared bus attachment, or null if it is not enabled
+     */
+    public static synchronized BusAttachment getBus() {
+        return bus;
+    }
+
+    /**
+     * Connects the shared attachment to the bus the first time a channel needs it.
+     * @return the status of the connection
+     */
+    static synchronized Status connect() {
+        if (connections > 0) {
+            connections++;
+            return Status.OK;
+        }
+        Status status = bus.connect();
+        if (status == Status.OK)
+            connections++;
+        return status;
+    }
+
+    /**
+     * Disconnects the shared attachment from the bus when no channel needs it anymore.
+     */
+    static synchronized void disconnect() {
+        if (connections > 0 && --connections == 0)
+            bus.disconnect();
+    }
+}
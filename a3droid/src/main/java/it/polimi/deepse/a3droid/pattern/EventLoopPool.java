@@ -0,0 +1,44 @@
+package it.polimi.deepse.a3droid.pattern;
+
+import android.os.HandlerThread;
+import android.os.Looper;
+
+/**This class lets all the group channels of the node share a small, fixed number of event loops,
+ * instead of running a HandlerThread for each channel, for its control handler and for each active role.
+ * It is disabled by default and must be enabled before the node connects to its groups.
+ * Each key, i.e. a group name, is always served by the same loop, so everything a channel posts on it
+ * keeps being handled serially and in order, as it was on its own threads. A loop can serve several keys,
+ * so the handlers running on it must not block waiting for other events of the node.
+ */
+public class EventLoopPool {
+
+	private static HandlerThread[] loops = null;
+
+	/**
+	 * Enables the shared event loops. It has no effect if they are already enabled.
+	 * @param size The number of event loops, e.g. the number of cores.
+	 */
+	public static synchronized void enable(int size) {
+		if (loops != null || size <= 0)
+			return;
+		loops = new HandlerThread[size];
+		for (int i = 0; i < size; i++) {
+			loops[i] = new HandlerThread("A3EventLoop_" + i);
+			loops[i].start();
+		}
+	}
+
+	public static synchronized boolean isEnabled() {
+		return loops != null;
+	}
+
+	/**
+	 * @param key The key whose events must be handled serially, e.g. a group name.
+	 * @return The looper of the event loop serving the key, or null if the shared event loops are not enabled.
+	 */
+	public static synchronized Looper getLooper(String key) {
+		if (loops == null)
+			return null;
+		return loops[(key.hashCode() & Integer.MAX_VALUE) % loops.length].getLooper();
+	}
+}
@@ -0,0 +1,283 @@
+package it.polimi.deepse.a3droid.pattern;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**This class is the handle of an operation which completes asynchronously, e.g. a disconnection waiting for
+ * the outbound messages of a channel to be sent. The operation completes it with a result or fails it with an
+ * exception, only once. Callers can either be called back on completion, on the thread which completes it,
+ * or block on get(long, TimeUnit).
+ * Promises can be bounded in time with withTimeout(int, Executor) and chained with thenCompose(Transformation),
+ * so that a sequence of operations runs without parking any thread between them.
+ * @param <T> The type of the result.
+ */
+public class Promise<T> implements Future<T> {
+
+	/**Called when a Promise completes. It should return quickly, as it runs on the thread completing the Promise.*/
+	public interface Callback<T> {
+
+		void onSuccess(T result);
+
+		void onFailure(Exception e);
+	}
+
+	/**Starts the operation following the one of a Promise, given its result.*/
+	public interface Transformation<T, U> {
+
+		Promise<U> apply(T result) throws Exception;
+	}
+
+	/**
+	 * @param result The result of an operation which has already completed.
+	 * @return a completed Promise.
+	 */
+	public static <T> Promise<T> completed(T result) {
+		Promise<T> promise = new Promise<>();
+		promise.complete(result);
+		return promise;
+	}
+
+	/**
+	 * @param e The reason why an operation has already failed.
+	 * @return a failed Promise.
+	 */
+	public static <T> Promise<T> failed(Exception e) {
+		Promise<T> promise = new Promise<>();
+		promise.fail(e);
+		return promise;
+	}
+
+	/**
+	 * @param promises The Promises of operations running concurrently.
+	 * @return a Promise completed with the results of all the operations, in the same order, or failed
+	 * as soon as one of them fails.
+	 */
+	public static <T> Promise<List<T>> all(List<Promise<T>> promises) {
+		final Promise<List<T>> all = new Promise<>();
+		final List<T> results = new ArrayList<>(promises.size());
+		final AtomicInteger remaining = new AtomicInteger(promises.size());
+		if (promises.isEmpty())
+			all.complete(results);
+		for (int i = 0; i < promises.size(); i++) {
+			results.add(null);
+			final int index = i;
+			promises.get(i).addCallback(new Callback<T>() {
+				@Override
+				public void onSuccess(T result) {
+					synchronized (results) {
+						results.set(index, result);
+					}
+					if (remaining.decrementAndGet() == 0) {
+						List<T> completed;
+						synchronized (results) {
+							completed = new ArrayList<>(results);
+						}
+						all.complete(completed);
+					}
+				}
+
+				@Override
+				public void onFailure(Exception e) {
+					all.fail(e);
+				}
+			});
+		}
+		return all;
+	}
+
+	private boolean done = false;
+	private boolean cancelled = false;
+	private T result = null;
+	private Exception exception = null;
+	private List<Callback<T>> callbacks = new ArrayList<>();
+
+	/**
+	 * @param result The result of the operation.
+	 * @return false if the Promise was already completed.
+	 */
+	public boolean complete(T result) {
+		synchronized (this) {
+			if (done)
+				return false;
+			this.result = result;
+			done = true;
+			notifyAll();
+		}
+		runCallbacks();
+		return true;
+	}
+
+	/**
+	 * @param e The reason why the operation failed.
+	 * @return false if the Promise was already completed.
+	 */
+	public boolean fail(Exception e) {
+		synchronized (this) {
+			if (done)
+				return false;
+			this.exception = e;
+			done = true;
+			notifyAll();
+		}
+		runCallbacks();
+		return true;
+	}
+
+	/**
+	 * Fails the Promise with a CancellationException. The operation itself is not stopped,
+	 * only its result is discarded.
+	 */
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		synchronized (this) {
+			if (done)
+				return false;
+			cancelled = true;
+		}
+		return fail(new CancellationException());
+	}
+
+	@Override
+	public synchronized boolean isCancelled() {
+		return cancelled;
+	}
+
+	@Override
+	public synchronized boolean isDone() {
+		return done;
+	}
+
+	/**
+	 * @param callback Called when the Promise completes, immediately if it already has.
+	 */
+	public void addCallback(Callback<T> callback) {
+		synchronized (this) {
+			if (!done) {
+				callbacks.add(callback);
+				return;
+			}
+		}
+		notifyCallback(callback);
+	}
+
+	/**
+	 * Fails this Promise with a TimeoutException if it doesn't complete within the timeout.
+	 * The operation itself is not stopped.
+	 * @param timeout The time to wait in milliseconds.
+	 * @param executor Fails the Promise, and so runs its callbacks, when the timeout fires, instead of
+	 * the timer service thread.
+	 * @return this Promise.
+	 */
+	public Promise<T> withTimeout(final int timeout, final Executor executor) {
+		final Timer timer = new Timer(new TimerInterface() {
+			@Override
+			public void handleTimeEvent(int reason, Object object) {
+				executor.execute(new Runnable() {
+					@Override
+					public void run() {
+						fail(new TimeoutException("Not completed in " + timeout + "ms"));
+					}
+				});
+			}
+		}, 0, timeout);
+		timer.start();
+		addCallback(new Callback<T>() {
+			@Override
+			public void onSuccess(T result) {
+				timer.abort();
+			}
+
+			@Override
+			public void onFailure(Exception e) {
+				timer.abort();
+			}
+		});
+		return this;
+	}
+
+	/**
+	 * Starts the next operation when this Promise completes successfully.
+	 * @param next Starts the next operation given the result of this one.
+	 * @return a Promise completed with the result of the next operation, or failed if either operation fails.
+	 */
+	public <U> Promise<U> thenCompose(final Transformation<? super T, U> next) {
+		final Promise<U> composed = new Promise<>();
+		addCallback(new Callback<T>() {
+			@Override
+			public void onSuccess(T result) {
+				try {
+					next.apply(result).addCallback(new Callback<U>() {
+						@Override
+						public void onSuccess(U result) {
+							composed.complete(result);
+						}
+
+						@Override
+						public void onFailure(Exception e) {
+							composed.fail(e);
+						}
+					});
+				} catch (Exception e) {
+					composed.fail(e);
+				}
+			}
+
+			@Override
+			public void onFailure(Exception e) {
+				composed.fail(e);
+			}
+		});
+		return composed;
+	}
+
+	@Override
+	public synchronized T get() throws InterruptedException, ExecutionException {
+		while (!done)
+			wait();
+		return getResult();
+	}
+
+	@Override
+	public synchronized T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		long remaining;
+		while (!done) {
+			if ((remaining = deadline - System.nanoTime()) <= 0)
+				throw new TimeoutException();
+			TimeUnit.NANOSECONDS.timedWait(this, remaining);
+		}
+		return getResult();
+	}
+
+	private T getResult() throws ExecutionException {
+		if (cancelled)
+			throw (CancellationException) exception;
+		if (exception != null)
+			throw new ExecutionException(exception);
+		return result;
+	}
+
+	private void runCallbacks() {
+		List<Callback<T>> toNotify;
+		synchronized (this) {
+			toNotify = callbacks;
+			callbacks = new ArrayList<>();
+		}
+		for (Callback<T> callback : toNotify)
+			notifyCallback(callback);
+	}
+
+	private void notifyCallback(Callback<T> callback) {
+		if (exception == null)
+			callback.onSuccess(result);
+		else
+			callback.onFailure(exception);
+	}
+}
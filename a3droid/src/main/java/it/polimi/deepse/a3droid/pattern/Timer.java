@@ -1,37 +1,48 @@
 package it.polimi.deepse.a3droid.pattern;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**This class is used in A3GroupChannelInterface and in Service, which implement the interface "TimerInterface".
  * After a 2 seconds timeout, it calls TimerInterface.handleTimeEvent(int), to notify the timeout fired.
+ * Timers are fired by the TimerService of the node, which uses a single thread for all of them.
  * @author Francesco
  *
  */
-public class Timer extends Thread {
+public class Timer {
+
+	private static final int NEW = 0;
+	private static final int WAITING = 1;
+	private static final int ABORTED = 2;
+	private static final int EXPIRED = 3;
 
 	/**The TimerInterface to notify at timeout firing time.*/
-	private TimerInterface channel;
+	final TimerInterface timerInterface;
 
 	/**It indicates why the timeout is needed.
 	 * It is passed in handleTimeEvent(int), in order for the TimerInterface to know which timeout fired.
 	 */
-	private int reason;
+	final int reason;
 
 	/**The time to wait before timer firing.*/
-	private int timeToWait;
+	final int timeToWait;
 
-	private Object object = null;
+	final Object object;
 
-	private boolean abort;
+	private final AtomicInteger state = new AtomicInteger(NEW);
+
+	/**The position of this timer in the TimerService wheel, only accessed by its thread.*/
+	long deadline;
+	long remainingRounds;
+	Timer prev;
+	Timer next;
+	TimerService.Bucket bucket;
 
 	/**
 	 * @param channel The TimerInterface to notify at timeout firing time.
 	 * @param reason It indicates why the timeout is needed on "channel".
 	 */
 	public Timer(TimerInterface channel, int reason){
-		super();
-		this.channel = channel;
-		this.reason = reason;
-		this.abort = false;
-		timeToWait = 2000;
+		this(channel, reason, 2000);
 	}
 
 	/**
@@ -40,39 +51,48 @@ public class Timer extends Thread {
 	 * @param timeout The time to wait before timer firing.
 	 */
 	public Timer(TimerInterface timerInterface, int reason, int timeout) {
-		// TODO Auto-generated constructor stub
-		this(timerInterface, reason);
-		timeToWait = timeout;
+		this(timerInterface, reason, timeout, null);
 	}
 
 	/**
 	 * @param timerInterface The TimerInterface to notify at timeout firing time.
 	 * @param reason It indicates why the timeout is needed on "channel".
 	 * @param timeout The time to wait before timer firing.
+	 * @param object It is passed in handleTimeEvent(int, Object) when the timeout fires.
 	 */
 	public Timer(TimerInterface timerInterface, int reason, int timeout, Object object) {
-		// TODO Auto-generated constructor stub
-		this(timerInterface, reason);
-		timeToWait = timeout;
+		this.timerInterface = timerInterface;
+		this.reason = reason;
+		this.timeToWait = timeout;
 		this.object = object;
 	}
 
+	/**
+	 * Starts waiting for the timeout. A timer can only be started once.
+	 */
+	public void start(){
+		if (state.compareAndSet(NEW, WAITING))
+			TimerService.getDefault().schedule(this);
+	}
+
+	/**
+	 * Stops the timer, if it did not fire yet: its timeout won't be notified.
+	 */
 	public void abort(){
-		this.abort = true;
+		if (state.compareAndSet(WAITING, ABORTED))
+			TimerService.getDefault().cancel(this);
+		else
+			state.compareAndSet(NEW, ABORTED);
+	}
+
+	public boolean isAborted(){
+		return state.get() == ABORTED;
 	}
 
 	/**
-	 * It notify timeout firing after a 2s timeout.
+	 * @return true if the timer was waiting and has now fired, false if it was aborted
 	 */
-	@Override
-	public void run(){
-		try {
-			sleep(timeToWait);
-			if(!abort)
-				channel.handleTimeEvent(reason, object);
-		} catch (Exception e) {
-			e.printStackTrace();
-			// TODO Auto-generated catch block
-		}
+	boolean expire(){
+		return state.compareAndSet(WAITING, EXPIRED);
 	}
 }
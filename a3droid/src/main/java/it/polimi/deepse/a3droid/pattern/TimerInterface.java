@@ -4,7 +4,8 @@ package it.polimi.deepse.a3droid.pattern;
 public interface TimerInterface {
 
 	/**
-	 * Called by a Timer to notify its timeout firing.
+	 * Called by a Timer to notify its timeout firing, on the thread of the TimerService shared by all the Timers.
+	 * The taken action should be run on the thread of the implementation, not on the calling one.
 	 * @param reason It indicates which timeout fired. The taken action will depend on this.
 	 */
 	void handleTimeEvent(int reason, Object object);
@@ -0,0 +1,204 @@
+package it.polimi.deepse.a3droid.pattern;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**This class fires all the Timers of the node from a single thread, instead of a sleeping thread per Timer.
+ * Timers are kept in a hashed wheel (Varghese and Lauck): a circular array of buckets, each covering one tick,
+ * where a Timer is put in the bucket of its deadline together with the number of wheel rounds still to wait.
+ * Starting and aborting a Timer take constant time whatever the number of Timers waiting, and the thread only
+ * looks at the bucket of the current tick. When no Timer is waiting the thread sleeps until one is started.
+ * The timeouts are notified on this thread, so TimerInterface.handleTimeEvent(int, Object) should only hand the
+ * work over to the thread of its owner, e.g. by posting it to a Handler, for a slow timeout not to delay the others.
+ */
+public class TimerService {
+
+	/**The duration of a tick in milliseconds, i.e. the resolution of the timeouts.*/
+	private static final long TICK_DURATION = 10;
+	private static final long TICK_DURATION_NANOS = TICK_DURATION * 1000000L;
+
+	/**The number of buckets of the wheel, a power of two.*/
+	private static final int WHEEL_SIZE = 512;
+	private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+
+	private static TimerService defaultService = null;
+
+	/**
+	 * @return the timer service of this node, which is started the first time it is needed.
+	 */
+	public static synchronized TimerService getDefault() {
+		if (defaultService == null)
+			defaultService = new TimerService();
+		return defaultService;
+	}
+
+	private final Bucket[] wheel = new Bucket[WHEEL_SIZE];
+
+	/**The Timers started since the last tick, which the wheel thread puts in their bucket.*/
+	private final Queue<Timer> startedTimers = new ConcurrentLinkedQueue<>();
+
+	/**The Timers aborted since the last tick, which the wheel thread removes from their bucket.*/
+	private final Queue<Timer> abortedTimers = new ConcurrentLinkedQueue<>();
+
+	/**The number of Timers started and neither fired nor removed yet.*/
+	private final AtomicInteger pendingTimers = new AtomicInteger();
+
+	private final long startTime = System.nanoTime();
+
+	/**The current tick, only accessed by the wheel thread.*/
+	private long tick = 0;
+
+	private TimerService() {
+		for (int i = 0; i < WHEEL_SIZE; i++)
+			wheel[i] = new Bucket();
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				runWheel();
+			}
+		}, "A3TimerService");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Schedules the timer, which fires after its timeout.
+	 * @param timer The timer to schedule.
+	 */
+	void schedule(Timer timer) {
+		timer.deadline = System.nanoTime() + timer.timeToWait * 1000000L;
+		startedTimers.add(timer);
+		if (pendingTimers.getAndIncrement() == 0) {
+			synchronized (this) {
+				notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Removes the aborted timer from the wheel at the next tick.
+	 * @param timer The aborted timer.
+	 */
+	void cancel(Timer timer) {
+		abortedTimers.add(timer);
+	}
+
+	private void runWheel() {
+		while (true) {
+			try {
+				waitForTimers();
+				waitForNextTick();
+			} catch (InterruptedException e) {
+				return;
+			}
+			transferStartedTimers();
+			removeAbortedTimers();
+			wheel[(int) (tick & WHEEL_MASK)].expire();
+			tick++;
+		}
+	}
+
+	/**
+	 * Sleeps while no Timer is waiting, then moves the wheel to the current time: its buckets are all empty.
+	 */
+	private synchronized void waitForTimers() throws InterruptedException {
+		if (pendingTimers.get() > 0)
+			return;
+		while (pendingTimers.get() == 0)
+			wait();
+		tick = Math.max(tick, (System.nanoTime() - startTime) / TICK_DURATION_NANOS);
+	}
+
+	private void waitForNextTick() throws InterruptedException {
+		long deadline = startTime + (tick + 1) * TICK_DURATION_NANOS;
+		long sleepTime;
+		while ((sleepTime = deadline - System.nanoTime()) > 0)
+			Thread.sleep(sleepTime / 1000000L, (int) (sleepTime % 1000000L));
+	}
+
+	private void transferStartedTimers() {
+		Timer timer;
+		while ((timer = startedTimers.poll()) != null) {
+			if (timer.isAborted())
+				continue;
+			long expiryTick = (timer.deadline - startTime) / TICK_DURATION_NANOS;
+			timer.remainingRounds = (expiryTick - tick) / WHEEL_SIZE;
+			wheel[(int) (Math.max(expiryTick, tick) & WHEEL_MASK)].add(timer);
+		}
+	}
+
+	private void removeAbortedTimers() {
+		Timer timer;
+		while ((timer = abortedTimers.poll()) != null) {
+			if (timer.bucket != null)
+				timer.bucket.remove(timer);
+			pendingTimers.decrementAndGet();
+		}
+	}
+
+	/**
+	 * Fires a timer, unless it was aborted meanwhile.
+	 */
+	private void fire(Timer timer) {
+		if (!timer.expire())
+			return;
+		pendingTimers.decrementAndGet();
+		try {
+			timer.timerInterface.handleTimeEvent(timer.reason, timer.object);
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**The Timers expiring in the ticks of a wheel slot, as a doubly linked list.*/
+	class Bucket {
+
+		private Timer head;
+		private Timer tail;
+
+		void add(Timer timer) {
+			timer.bucket = this;
+			if (head == null) {
+				head = tail = timer;
+			} else {
+				tail.next = timer;
+				timer.prev = tail;
+				tail = timer;
+			}
+		}
+
+		void remove(Timer timer) {
+			if (timer.prev != null)
+				timer.prev.next = timer.next;
+			else
+				head = timer.next;
+			if (timer.next != null)
+				timer.next.prev = timer.prev;
+			else
+				tail = timer.prev;
+			timer.prev = null;
+			timer.next = null;
+			timer.bucket = null;
+		}
+
+		/**
+		 * Fires the timers of this bucket whose last round is over, and counts a round for the others.
+		 */
+		void expire() {
+			Timer timer = head;
+			while (timer != null) {
+				Timer next = timer.next;
+				if (timer.remainingRounds <= 0) {
+					remove(timer);
+					fire(timer);
+				} else if (timer.isAborted()) {
+					remove(timer);
+				} else {
+					timer.remainingRounds--;
+				}
+				timer = next;
+			}
+		}
+	}
+}
@@ -0,0 +1,86 @@
+package it.polimi.deepse.a3droid.utility;
+
+/**
+ * Accrual failure detector (Hayashibara et al.): instead of a fixed timeout, it gives a suspicion
+ * level phi which grows with the time since the last heartbeat, relative to the mean and deviation
+ * of the recent inter-arrival times. phi = 1 means a 10% chance that the monitored node is still
+ * alive and the heartbeat is just late, phi = 2 a 1% chance and so on, so the threshold adapts to
+ * the network the group is running on.
+ * Times are in milliseconds. It is not thread safe.
+ */
+public class PhiAccrualFailureDetector {
+
+    /**The number of inter-arrival times the estimate is based on.*/
+    private static final int WINDOW_SIZE = 100;
+
+    private final long[] intervals = new long[WINDOW_SIZE];
+    private int count = 0;
+    private int next = 0;
+    private double sum = 0;
+    private double squaresSum = 0;
+
+    /**The time of the last heartbeat, or -1 if none was received yet.*/
+    private long lastHeartbeat = -1;
+
+    /**The lower bound of the standard deviation, so that a very regular sender is not suspected on the first jitter.*/
+    private final double minStdDeviation;
+
+    /**
+     * @param expectedInterval the period at which heartbeats are sent, used as first estimate
+     */
+    public PhiAccrualFailureDetector(long expectedInterval) {
+        this.minStdDeviation = expectedInterval / 4.0;
+        addInterval(expectedInterval);
+    }
+
+    /**
+     * Records a heartbeat.
+     *
+     * @param now the current time
+     */
+    public void heartbeat(long now) {
+        if (lastHeartbeat >= 0)
+            addInterval(now - lastHeartbeat);
+        lastHeartbeat = now;
+    }
+
+    /**
+     * @return true if at least one heartbeat was received
+     */
+    public boolean isMonitoring() {
+        return lastHeartbeat >= 0;
+    }
+
+    /**
+     * @param now the current time
+     * @return the suspicion level, or 0 if no heartbeat was received yet
+     */
+    public double phi(long now) {
+        if (lastHeartbeat < 0)
+            return 0;
+        double mean = sum / count;
+        double variance = squaresSum / count - mean * mean;
+        double stdDeviation = Math.max(Math.sqrt(Math.max(variance, 0)), minStdDeviation);
+
+        // Logistic approximation of the normal cumulative distribution function
+        double y = ((now - lastHeartbeat) - mean) / stdDeviation;
+        double e = Math.exp(-y * (1.5976 + 0.070566 * y * y));
+        if (now - lastHeartbeat > mean)
+            return -Math.log10(e / (1.0 + e));
+        else
+            return -Math.log10(1.0 - 1.0 / (1.0 + e));
+    }
+
+    private void addInterval(long interval) {
+        if (count == WINDOW_SIZE) {
+            sum -= intervals[next];
+            squaresSum -= (double) intervals[next] * intervals[next];
+        } else {
+            count++;
+        }
+        intervals[next] = interval;
+        sum += interval;
+        squaresSum += (double) interval * interval;
+        next = (next + 1) % WINDOW_SIZE;
+    }
+}
@@ -0,0 +1,58 @@
+package it.polimi.deepse.a3droid.utility;
+
+/**
+ * Estimates the round-trip time of the control messages of a channel and derives a timeout
+ * from it, as TCP does for retransmissions (RFC 6298): smoothed RTT plus four times its mean
+ * deviation. Timeouts are kept between a floor and a ceiling, and the initial timeout is used
+ * until the first sample.
+ * Times are in milliseconds.
+ */
+public class RttEstimator {
+
+    private final int initialTimeout;
+    private final int minTimeout;
+    private final int maxTimeout;
+
+    /**The smoothed round-trip time, or -1 before the first sample.*/
+    private double smoothedRtt = -1;
+    private double rttVariation = 0;
+
+    /**
+     * @param initialTimeout the timeout used before the first sample
+     * @param minTimeout the floor of the timeout
+     * @param maxTimeout the ceiling of the timeout
+     */
+    public RttEstimator(int initialTimeout, int minTimeout, int maxTimeout) {
+        this.initialTimeout = initialTimeout;
+        this.minTimeout = minTimeout;
+        this.maxTimeout = maxTimeout;
+    }
+
+    /**
+     * @param rtt a measured round-trip time
+     */
+    public synchronized void addSample(long rtt) {
+        if (smoothedRtt < 0) {
+            smoothedRtt = rtt;
+            rttVariation = rtt / 2.0;
+        } else {
+            rttVariation = 0.75 * rttVariation + 0.25 * Math.abs(smoothedRtt - rtt);
+            smoothedRtt = 0.875 * smoothedRtt + 0.125 * rtt;
+        }
+    }
+
+    /**
+     * @return the smoothed round-trip time, or -1 if no sample was added yet
+     */
+    public synchronized long getSmoothedRtt() {
+        return Math.round(smoothedRtt);
+    }
+
+    /**
+     * @return the time to wait for a reply, between the floor and the ceiling
+     */
+    public synchronized int getTimeout() {
+        double timeout = smoothedRtt < 0 ? initialTimeout : smoothedRtt + 4 * rttVariation;
+        return (int) Math.max(minTimeout, Math.min(maxTimeout, timeout));
+    }
+}
@@ -0,0 +1,111 @@
+package it.polimi.deepse.a3droid.a3;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the uniform and weighted sampling of the members of a group view snapshot.
+ */
+public class A3GroupViewTest {
+
+    private static final int TRIALS = 20000;
+
+    private static A3GroupView.Snapshot snapshot(String... members) {
+        return A3GroupView.Snapshot.EMPTY.replace(Arrays.asList(members));
+    }
+
+    @Test
+    public void uniformSample_isDistinctAndSkipsExcluded() throws Exception {
+        A3GroupView.Snapshot view = snapshot("m0", "m1", "m2", "m3", "m4", "m5", "m6", "m7", "m8", "m9");
+        for (int seed = 0; seed < 100; seed++) {
+            List<String> sample = view.sample(4, new Random(seed), "m3");
+            assertEquals(4, sample.size());
+            assertEquals(4, new HashSet<>(sample).size());
+            assertFalse(sample.contains("m3"));
+            for (String member : sample)
+                assertTrue(view.contains(member));
+        }
+    }
+
+    @Test
+    public void uniformSample_returnsAllOthersWhenTooFew() throws Exception {
+        A3GroupView.Snapshot view = snapshot("m0", "m1", "m2", "m3");
+        assertEquals(new HashSet<>(Arrays.asList("m0", "m1", "m2")),
+                new HashSet<>(view.sample(10, new Random(1), "m3")));
+        assertEquals(new HashSet<>(view.getMembers()), new HashSet<>(view.sample(10, new Random(1), null)));
+        assertEquals(new HashSet<>(view.getMembers()), new HashSet<>(view.sample(10, new Random(1), "other")));
+        assertTrue(view.sample(0, new Random(1), null).isEmpty());
+    }
+
+    @Test
+    public void uniformSample_isUniform() throws Exception {
+        A3GroupView.Snapshot view = snapshot("m0", "m1", "m2", "m3", "m4", "m5");
+        Random random = new Random(42);
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < TRIALS; i++)
+            for (String member : view.sample(2, random, "m0"))
+                increment(counts, member);
+        assertNull(counts.get("m0"));
+        for (String member : Arrays.asList("m1", "m2", "m3", "m4", "m5"))
+            assertEquals(member, 2.0 / 5, counts.get(member) / (double) TRIALS, 0.02);
+    }
+
+    @Test
+    public void weightedSample_isDistinctAndSkipsExcluded() throws Exception {
+        A3GroupView.Snapshot view = snapshot("m0", "m1", "m2", "m3", "m4", "m5");
+        Map<String, Integer> weights = new HashMap<>();
+        for (int i = 0; i < 6; i++)
+            weights.put("m" + i, i + 1);
+        for (int seed = 0; seed < 100; seed++) {
+            List<String> sample = view.sample(3, new Random(seed), "m5", weights);
+            assertEquals(3, sample.size());
+            assertEquals(3, new HashSet<>(sample).size());
+            assertFalse(sample.contains("m5"));
+        }
+        assertEquals(5, view.sample(10, new Random(1), "m5", weights).size());
+        assertTrue(view.sample(0, new Random(1), null, weights).isEmpty());
+    }
+
+    @Test
+    public void weightedSample_prefersPositiveWeights() throws Exception {
+        A3GroupView.Snapshot view = snapshot("a", "b", "c", "d");
+        Map<String, Integer> weights = new HashMap<>();
+        weights.put("a", 1);
+        weights.put("b", 0);
+        weights.put("c", 5);
+        for (int seed = 0; seed < 100; seed++) {
+            assertEquals(new HashSet<>(Arrays.asList("a", "c")),
+                    new HashSet<>(view.sample(2, new Random(seed), null, weights)));
+            assertEquals(3, view.sample(3, new Random(seed), null, weights).size());
+        }
+    }
+
+    @Test
+    public void weightedSample_isProportionalToWeight() throws Exception {
+        A3GroupView.Snapshot view = snapshot("a", "b", "c");
+        Map<String, Integer> weights = new HashMap<>();
+        weights.put("a", 1);
+        weights.put("b", 3);
+        weights.put("c", 6);
+        Random random = new Random(42);
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < TRIALS; i++)
+            increment(counts, view.sample(1, random, null, weights).get(0));
+        assertEquals(0.1, counts.get("a") / (double) TRIALS, 0.02);
+        assertEquals(0.3, counts.get("b") / (double) TRIALS, 0.02);
+        assertEquals(0.6, counts.get("c") / (double) TRIALS, 0.02);
+    }
+
+    private static void increment(Map<String, Integer> counts, String member) {
+        Integer count = counts.get(member);
+        counts.put(member, count == null ? 1 : count + 1);
+    }
+}
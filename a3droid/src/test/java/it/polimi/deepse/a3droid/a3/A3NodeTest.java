@@ -0,0 +1,140 @@
+package it.polimi.deepse.a3droid.a3;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import it.polimi.deepse.a3droid.a3.exceptions.A3NoGroupDescriptionException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the resolution of the descriptor of a group, split groups included, by name, and the
+ * creation of the roles through their factories.
+ */
+public class A3NodeTest {
+
+    /**A role created through its no-argument constructor.*/
+    public static class ConstructedRole extends A3FollowerRole {
+
+        @Override
+        public void onActivation() {
+        }
+
+        @Override
+        public void receiveApplicationMessage(A3Message message) {
+        }
+    }
+
+    private static final String ROLE = ConstructedRole.class.getName();
+
+    private static A3GroupDescriptor descriptor(String name) {
+        return new A3GroupDescriptor(name, "supervisor", "follower") {
+            @Override
+            public int getSupervisorFitnessFunction() {
+                return 0;
+            }
+        };
+    }
+
+    private static A3Node node(A3GroupDescriptor... descriptors) {
+        return node(new ArrayList<String>(), descriptors);
+    }
+
+    private static A3Node node(ArrayList<String> roles, A3GroupDescriptor... descriptors) {
+        return new A3Node(null, new ArrayList<>(Arrays.asList(descriptors)), roles);
+    }
+
+    @Test
+    public void descriptorIsFoundByGroupName() throws Exception {
+        A3GroupDescriptor group = descriptor("group");
+        A3GroupDescriptor other = descriptor("other");
+        A3Node node = node(group, other);
+        assertSame(group, node.getGroupDescriptor("group"));
+        assertSame(other, node.getGroupDescriptor("other"));
+    }
+
+    @Test
+    public void splitGroupResolvesToItsBaseGroup() throws Exception {
+        A3GroupDescriptor group = descriptor("group");
+        A3Node node = node(group);
+        assertSame(group, node.getGroupDescriptor("group_1"));
+        assertSame(group, node.getGroupDescriptor("group_1_2"));
+        assertSame(group, node.getGroupDescriptor("group_1"));
+    }
+
+    @Test
+    public void baseNameMayContainUnderscores() throws Exception {
+        A3GroupDescriptor group = descriptor("group_a");
+        A3GroupDescriptor prefix = descriptor("group");
+        A3Node node = node(group, prefix);
+        assertSame(group, node.getGroupDescriptor("group_a"));
+        assertSame(group, node.getGroupDescriptor("group_a_2"));
+        assertSame(prefix, node.getGroupDescriptor("group_b_2"));
+    }
+
+    @Test
+    public void unknownGroupHasNoDescriptor() {
+        A3Node node = node(descriptor("group"));
+        for (String name : Arrays.asList("other", "other_1", "_group", "groups_1")) {
+            try {
+                node.getGroupDescriptor(name);
+                fail("no descriptor should have been found for " + name);
+            } catch (A3NoGroupDescriptionException e) {
+                //expected
+            }
+        }
+    }
+
+    @Test
+    public void roleIsCreatedThroughItsConstructor() {
+        A3Node node = node(new ArrayList<>(Collections.singletonList(ROLE)));
+        A3FollowerRole first = node.getRole(ROLE, A3FollowerRole.class);
+        A3FollowerRole second = node.getRole(ROLE, A3FollowerRole.class);
+        assertTrue(first instanceof ConstructedRole);
+        assertTrue(second instanceof ConstructedRole);
+        assertNotSame(first, second);
+        assertSame(node, first.node);
+    }
+
+    @Test
+    public void registeredFactoryCreatesTheRole() {
+        final AtomicInteger created = new AtomicInteger();
+        A3Node node = node(new ArrayList<>(Collections.singletonList(ROLE)));
+        node.resolveRoleFactories();
+        node.registerRoleFactory(ROLE, new A3RoleFactory() {
+            @Override
+            public A3Role createRole() {
+                created.incrementAndGet();
+                return new ConstructedRole();
+            }
+        });
+        assertNotNull(node.getRole(ROLE, A3FollowerRole.class));
+        assertNotNull(node.getRole(ROLE, A3FollowerRole.class));
+        assertEquals(2, created.get());
+    }
+
+    @Test
+    public void roleOutsideTheNodeRolesIsNotCreated() {
+        A3Node node = node(new ArrayList<String>());
+        assertNull(node.getRole(ROLE, A3FollowerRole.class));
+        assertNull(node.getRole(null, A3FollowerRole.class));
+        node.registerRoleFactory(ROLE, new A3RoleFactory() {
+            @Override
+            public A3Role createRole() {
+                return new ConstructedRole();
+            }
+        });
+        assertNull(node.getRole(ROLE, A3FollowerRole.class));
+    }
+
+    @Test
+    public void unknownRoleClassIsNotCreated() {
+        String unknown = "it.polimi.deepse.a3droid.a3.NoSuchRole";
+        A3Node node = node(new ArrayList<>(Collections.singletonList(unknown)));
+        assertNull(node.getRole(unknown, A3FollowerRole.class));
+    }
+}
@@ -0,0 +1,302 @@
+package it.polimi.deepse.a3droid.pattern;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the completion of a Promise, its callbacks and the blocking get methods, and Promises bounded
+ * in time, chained and combined.
+ */
+public class PromiseTest {
+
+    /**Records the outcomes it is notified of.*/
+    private static class RecordingCallback<T> implements Promise.Callback<T> {
+
+        final List<T> results = Collections.synchronizedList(new ArrayList<T>());
+        final List<Exception> failures = Collections.synchronizedList(new ArrayList<Exception>());
+
+        @Override
+        public void onSuccess(T result) {
+            results.add(result);
+        }
+
+        @Override
+        public void onFailure(Exception e) {
+            failures.add(e);
+        }
+    }
+
+    @Test
+    public void completesOnlyOnce() throws Exception {
+        Promise<String> promise = new Promise<>();
+        assertFalse(promise.isDone());
+        assertTrue(promise.complete("first"));
+        assertFalse(promise.complete("second"));
+        assertFalse(promise.fail(new Exception()));
+        assertTrue(promise.isDone());
+        assertFalse(promise.isCancelled());
+        assertEquals("first", promise.get());
+    }
+
+    @Test
+    public void failureIsThrownByGet() throws Exception {
+        Exception cause = new Exception("failed");
+        Promise<String> promise = new Promise<>();
+        promise.fail(cause);
+        assertFalse(promise.complete("late"));
+        try {
+            promise.get();
+            fail("get() should have thrown");
+        } catch (ExecutionException e) {
+            assertSame(cause, e.getCause());
+        }
+    }
+
+    @Test
+    public void cancelFailsWithCancellation() throws Exception {
+        Promise<String> promise = new Promise<>();
+        RecordingCallback<String> callback = new RecordingCallback<>();
+        promise.addCallback(callback);
+        assertTrue(promise.cancel(false));
+        assertFalse(promise.cancel(false));
+        assertFalse(promise.complete("late"));
+        assertTrue(promise.isCancelled());
+        assertTrue(promise.isDone());
+        assertEquals(1, callback.failures.size());
+        assertTrue(callback.failures.get(0) instanceof CancellationException);
+        try {
+            promise.get();
+            fail("get() should have thrown");
+        } catch (CancellationException e) {
+            //expected
+        }
+    }
+
+    @Test
+    public void cancelAfterCompletionHasNoEffect() throws Exception {
+        Promise<String> promise = new Promise<>();
+        promise.complete("done");
+        assertFalse(promise.cancel(true));
+        assertFalse(promise.isCancelled());
+        assertEquals("done", promise.get());
+    }
+
+    @Test
+    public void getBlocksUntilCompleted() throws Exception {
+        final Promise<String> promise = new Promise<>();
+        Thread completer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                promise.complete("done");
+            }
+        });
+        completer.start();
+        assertEquals("done", promise.get(2, TimeUnit.SECONDS));
+        completer.join();
+    }
+
+    @Test
+    public void getTimesOutIfNotCompleted() throws Exception {
+        Promise<String> promise = new Promise<>();
+        long start = System.nanoTime();
+        try {
+            promise.get(100, TimeUnit.MILLISECONDS);
+            fail("get() should have timed out");
+        } catch (TimeoutException e) {
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 100);
+        }
+        assertFalse(promise.isDone());
+    }
+
+    @Test
+    public void callbacksAreNotifiedOnceOnCompletion() {
+        Promise<String> promise = new Promise<>();
+        RecordingCallback<String> first = new RecordingCallback<>();
+        RecordingCallback<String> second = new RecordingCallback<>();
+        promise.addCallback(first);
+        promise.addCallback(second);
+        assertTrue(first.results.isEmpty());
+        promise.complete("done");
+        promise.complete("again");
+        assertEquals(Collections.singletonList("done"), first.results);
+        assertEquals(Collections.singletonList("done"), second.results);
+        assertTrue(first.failures.isEmpty());
+    }
+
+    @Test
+    public void callbackAddedAfterCompletionIsNotifiedImmediately() {
+        Exception cause = new Exception("failed");
+        RecordingCallback<String> callback = new RecordingCallback<>();
+        Promise<String> promise = new Promise<>();
+        promise.fail(cause);
+        promise.addCallback(callback);
+        assertTrue(callback.results.isEmpty());
+        assertEquals(Collections.singletonList(cause), callback.failures);
+    }
+
+    @Test
+    public void withTimeoutFailsOnExecutorIfNotCompletedInTime() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final Thread[] callbackThread = new Thread[1];
+            Promise<String> promise = new Promise<String>().withTimeout(100, executor);
+            promise.addCallback(new RecordingCallback<String>() {
+                @Override
+                public void onFailure(Exception e) {
+                    callbackThread[0] = Thread.currentThread();
+                    super.onFailure(e);
+                }
+            });
+            try {
+                promise.get(2, TimeUnit.SECONDS);
+                fail("the Promise should have failed");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof TimeoutException);
+            }
+            assertFalse(promise.complete("late"));
+            Thread executorThread = executor.submit(new Callable<Thread>() {
+                @Override
+                public Thread call() {
+                    return Thread.currentThread();
+                }
+            }).get();
+            assertSame(executorThread, callbackThread[0]);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void withTimeoutKeepsResultCompletedInTime() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Promise<String> promise = new Promise<String>().withTimeout(100, executor);
+        RecordingCallback<String> callback = new RecordingCallback<>();
+        promise.addCallback(callback);
+        assertTrue(promise.complete("done"));
+        Thread.sleep(300);
+        assertEquals(Collections.singletonList("done"), callback.results);
+        assertTrue(callback.failures.isEmpty());
+        assertEquals("done", promise.get());
+        executor.shutdown();
+    }
+
+    @Test
+    public void thenComposeChainsOperations() throws Exception {
+        Promise<Integer> first = new Promise<>();
+        final Promise<String> second = new Promise<>();
+        final AtomicInteger applied = new AtomicInteger(-1);
+        Promise<String> composed = first.thenCompose(new Promise.Transformation<Integer, String>() {
+            @Override
+            public Promise<String> apply(Integer result) {
+                applied.set(result);
+                return second;
+            }
+        });
+        first.complete(42);
+        assertEquals(42, applied.get());
+        assertFalse(composed.isDone());
+        second.complete("done");
+        assertEquals("done", composed.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void thenComposeSkipsNextOperationIfFirstFails() throws Exception {
+        Exception cause = new Exception("failed");
+        final AtomicInteger applied = new AtomicInteger();
+        Promise<String> composed = Promise.<Integer>failed(cause).thenCompose(new Promise.Transformation<Integer, String>() {
+            @Override
+            public Promise<String> apply(Integer result) {
+                applied.incrementAndGet();
+                return Promise.completed("done");
+            }
+        });
+        assertEquals(0, applied.get());
+        try {
+            composed.get(1, TimeUnit.SECONDS);
+            fail("the composed Promise should have failed");
+        } catch (ExecutionException e) {
+            assertSame(cause, e.getCause());
+        }
+    }
+
+    @Test
+    public void thenComposeFailsIfNextOperationFails() throws Exception {
+        final Exception cause = new Exception("next failed");
+        Promise<String> failedNext = Promise.completed(1).thenCompose(new Promise.Transformation<Integer, String>() {
+            @Override
+            public Promise<String> apply(Integer result) {
+                return Promise.failed(cause);
+            }
+        });
+        Promise<String> throwingNext = Promise.completed(1).thenCompose(new Promise.Transformation<Integer, String>() {
+            @Override
+            public Promise<String> apply(Integer result) throws Exception {
+                throw cause;
+            }
+        });
+        for (Promise<String> composed : Arrays.asList(failedNext, throwingNext)) {
+            try {
+                composed.get(1, TimeUnit.SECONDS);
+                fail("the composed Promise should have failed");
+            } catch (ExecutionException e) {
+                assertSame(cause, e.getCause());
+            }
+        }
+    }
+
+    @Test
+    public void allCompletesWithResultsInOrder() throws Exception {
+        Promise<Integer> first = new Promise<>();
+        Promise<Integer> second = new Promise<>();
+        Promise<Integer> third = new Promise<>();
+        Promise<List<Integer>> all = Promise.all(Arrays.asList(first, second, third));
+        third.complete(3);
+        first.complete(1);
+        assertFalse(all.isDone());
+        second.complete(2);
+        assertEquals(Arrays.asList(1, 2, 3), all.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void allFailsAsSoonAsOneFails() throws Exception {
+        Exception cause = new Exception("failed");
+        Promise<Integer> first = new Promise<>();
+        Promise<Integer> second = new Promise<>();
+        Promise<List<Integer>> all = Promise.all(Arrays.asList(first, second));
+        second.fail(cause);
+        assertTrue(all.isDone());
+        first.complete(1);
+        try {
+            all.get();
+            fail("all should have failed");
+        } catch (ExecutionException e) {
+            assertSame(cause, e.getCause());
+        }
+    }
+
+    @Test
+    public void allOfNoPromisesIsCompleted() throws Exception {
+        Promise<List<Integer>> all = Promise.all(new ArrayList<Promise<Integer>>());
+        assertTrue(all.isDone());
+        assertTrue(all.get().isEmpty());
+    }
+}
@@ -0,0 +1,163 @@
+package it.polimi.deepse.a3droid.pattern;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the Timers fired by the hashed wheel of the TimerService: timeouts, aborts, timeouts longer
+ * than a round of the wheel and Timers started after the wheel thread was idle.
+ */
+public class TimerServiceTest {
+
+    /**The tolerated lateness of a timer, a few ticks.*/
+    private static final long LATENESS = 100;
+
+    /**Records when and how many times it was notified.*/
+    private static class RecordingTimerInterface implements TimerInterface {
+
+        final CountDownLatch fired = new CountDownLatch(1);
+        final AtomicInteger fires = new AtomicInteger();
+        final List<Integer> reasons = Collections.synchronizedList(new ArrayList<Integer>());
+        volatile long firedAt = -1;
+
+        @Override
+        public void handleTimeEvent(int reason, Object object) {
+            firedAt = System.nanoTime();
+            reasons.add(reason);
+            fires.incrementAndGet();
+            fired.countDown();
+        }
+
+        long awaitFire(long timeoutMillis) throws InterruptedException {
+            assertTrue("timer did not fire", fired.await(timeoutMillis, TimeUnit.MILLISECONDS));
+            return firedAt;
+        }
+    }
+
+    private static long elapsedMillis(long from, long to) {
+        return TimeUnit.NANOSECONDS.toMillis(to - from);
+    }
+
+    @Test
+    public void timer_firesAfterTimeoutNotEarly() throws Exception {
+        RecordingTimerInterface recorder = new RecordingTimerInterface();
+        long start = System.nanoTime();
+        new Timer(recorder, 7, 200, "object").start();
+        long elapsed = elapsedMillis(start, recorder.awaitFire(1000));
+        assertTrue("fired early: " + elapsed, elapsed >= 200);
+        assertTrue("fired late: " + elapsed, elapsed < 200 + LATENESS);
+        assertEquals(Collections.singletonList(7), recorder.reasons);
+    }
+
+    @Test
+    public void timers_fireInDeadlineOrder() throws Exception {
+        final List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+        final CountDownLatch fired = new CountDownLatch(3);
+        TimerInterface recorder = new TimerInterface() {
+            @Override
+            public void handleTimeEvent(int reason, Object object) {
+                order.add(reason);
+                fired.countDown();
+            }
+        };
+        new Timer(recorder, 300, 300).start();
+        new Timer(recorder, 100, 100).start();
+        new Timer(recorder, 200, 200).start();
+        assertTrue(fired.await(1000, TimeUnit.MILLISECONDS));
+        assertEquals(Arrays.asList(100, 200, 300), order);
+    }
+
+    @Test
+    public void timer_firesOnlyOnce() throws Exception {
+        RecordingTimerInterface recorder = new RecordingTimerInterface();
+        Timer timer = new Timer(recorder, 0, 50);
+        timer.start();
+        timer.start();
+        recorder.awaitFire(1000);
+        Thread.sleep(200);
+        assertEquals(1, recorder.fires.get());
+        timer.abort();
+        assertFalse(timer.isAborted());
+    }
+
+    @Test
+    public void timer_abortedBeforeTransferDoesNotFire() throws Exception {
+        RecordingTimerInterface recorder = new RecordingTimerInterface();
+        Timer timer = new Timer(recorder, 0, 50);
+        timer.start();
+        timer.abort();
+        assertTrue(timer.isAborted());
+        assertFalse(recorder.fired.await(300, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void timer_abortedInWheelDoesNotFire() throws Exception {
+        RecordingTimerInterface recorder = new RecordingTimerInterface();
+        Timer timer = new Timer(recorder, 0, 200);
+        timer.start();
+        Thread.sleep(100);
+        timer.abort();
+        assertFalse(recorder.fired.await(400, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void timer_abortedBeforeStartDoesNotFire() throws Exception {
+        RecordingTimerInterface recorder = new RecordingTimerInterface();
+        Timer timer = new Timer(recorder, 0, 50);
+        timer.abort();
+        timer.start();
+        assertFalse(recorder.fired.await(300, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void aborts_doNotDelayOtherTimers() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            Timer aborted = new Timer(new RecordingTimerInterface(), 0, 100);
+            aborted.start();
+            aborted.abort();
+        }
+        RecordingTimerInterface recorder = new RecordingTimerInterface();
+        long start = System.nanoTime();
+        new Timer(recorder, 0, 150).start();
+        long elapsed = elapsedMillis(start, recorder.awaitFire(1000));
+        assertTrue("fired early: " + elapsed, elapsed >= 150);
+        assertTrue("fired late: " + elapsed, elapsed < 150 + LATENESS);
+    }
+
+    @Test
+    public void timer_startedAfterIdleFiresOnTime() throws Exception {
+        RecordingTimerInterface first = new RecordingTimerInterface();
+        new Timer(first, 0, 20).start();
+        first.awaitFire(1000);
+        //The wheel thread sleeps until the next Timer is started, and must catch up with the time
+        Thread.sleep(500);
+
+        RecordingTimerInterface second = new RecordingTimerInterface();
+        long start = System.nanoTime();
+        new Timer(second, 0, 100).start();
+        long elapsed = elapsedMillis(start, second.awaitFire(1000));
+        assertTrue("fired early: " + elapsed, elapsed >= 100);
+        assertTrue("fired late: " + elapsed, elapsed < 100 + LATENESS);
+    }
+
+    @Test
+    public void timer_longerThanOneRoundWaitsForItsRound() throws Exception {
+        //A round of the wheel lasts 512 ticks of 10ms
+        RecordingTimerInterface recorder = new RecordingTimerInterface();
+        long start = System.nanoTime();
+        new Timer(recorder, 0, 5300).start();
+        assertFalse("fired a round early", recorder.fired.await(1000, TimeUnit.MILLISECONDS));
+        long elapsed = elapsedMillis(start, recorder.awaitFire(6000));
+        assertTrue("fired early: " + elapsed, elapsed >= 5300);
+        assertTrue("fired late: " + elapsed, elapsed < 5300 + LATENESS);
+    }
+}
@@ -0,0 +1,68 @@
+package it.polimi.deepse.a3droid.utility;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the suspicion level of the accrual failure detector for regular and irregular heartbeats.
+ */
+public class PhiAccrualFailureDetectorTest {
+
+    private static final long PERIOD = 1000;
+
+    private static PhiAccrualFailureDetector regularHeartbeats(long period, int heartbeats) {
+        PhiAccrualFailureDetector detector = new PhiAccrualFailureDetector(PERIOD);
+        for (int i = 0; i < heartbeats; i++)
+            detector.heartbeat(i * period);
+        return detector;
+    }
+
+    @Test
+    public void phi_isZeroBeforeFirstHeartbeat() throws Exception {
+        PhiAccrualFailureDetector detector = new PhiAccrualFailureDetector(PERIOD);
+        assertFalse(detector.isMonitoring());
+        assertEquals(0, detector.phi(10 * PERIOD), 0);
+        detector.heartbeat(0);
+        assertTrue(detector.isMonitoring());
+    }
+
+    @Test
+    public void phi_growsWithSilence() throws Exception {
+        PhiAccrualFailureDetector detector = regularHeartbeats(PERIOD, 10);
+        long last = 9 * PERIOD;
+        double previous = -1;
+        for (long elapsed = 0; elapsed <= 3 * PERIOD; elapsed += PERIOD / 10) {
+            double phi = detector.phi(last + elapsed);
+            assertTrue("phi decreased at " + elapsed, phi >= previous);
+            previous = phi;
+        }
+        assertTrue(detector.phi(last + PERIOD / 2) < 1);
+        assertEquals(-Math.log10(0.5), detector.phi(last + PERIOD), 0.01);
+        assertTrue(detector.phi(last + 3 * PERIOD) > 8);
+    }
+
+    @Test
+    public void phi_isLowerForIrregularHeartbeats() throws Exception {
+        PhiAccrualFailureDetector irregular = new PhiAccrualFailureDetector(PERIOD);
+        long last = 0;
+        for (int i = 0; i < 20; i++) {
+            last += i % 2 == 0 ? PERIOD / 4 : 7 * PERIOD / 4;
+            irregular.heartbeat(last);
+        }
+        PhiAccrualFailureDetector regular = regularHeartbeats(PERIOD, 20);
+        assertTrue(irregular.phi(last + 2 * PERIOD) < regular.phi(19 * PERIOD + 2 * PERIOD));
+    }
+
+    @Test
+    public void phi_adaptsToANewPeriod() throws Exception {
+        PhiAccrualFailureDetector detector = regularHeartbeats(PERIOD, 5);
+        long now = 4 * PERIOD;
+        for (int i = 0; i < 150; i++) {
+            now += 2 * PERIOD;
+            detector.heartbeat(now);
+        }
+        assertEquals(-Math.log10(0.5), detector.phi(now + 2 * PERIOD), 0.01);
+        assertTrue(detector.phi(now + PERIOD) < 1);
+    }
+}
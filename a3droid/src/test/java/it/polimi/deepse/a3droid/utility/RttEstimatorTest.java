@@ -0,0 +1,49 @@
+package it.polimi.deepse.a3droid.utility;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the round-trip time estimate and the timeout derived from it.
+ */
+public class RttEstimatorTest {
+
+    private static final int INITIAL_TIMEOUT = 500;
+    private static final int MIN_TIMEOUT = 100;
+    private static final int MAX_TIMEOUT = 1500;
+
+    private final RttEstimator estimator = new RttEstimator(INITIAL_TIMEOUT, MIN_TIMEOUT, MAX_TIMEOUT);
+
+    @Test
+    public void timeout_isInitialBeforeFirstSample() throws Exception {
+        assertEquals(-1, estimator.getSmoothedRtt());
+        assertEquals(INITIAL_TIMEOUT, estimator.getTimeout());
+    }
+
+    @Test
+    public void firstSample_setsRttAndHalfDeviation() throws Exception {
+        estimator.addSample(200);
+        assertEquals(200, estimator.getSmoothedRtt());
+        assertEquals(200 + 4 * 100, estimator.getTimeout());
+    }
+
+    @Test
+    public void samples_areSmoothed() throws Exception {
+        estimator.addSample(200);
+        estimator.addSample(400);
+        // rttvar = 0.75 * 100 + 0.25 * 200, srtt = 0.875 * 200 + 0.125 * 400
+        assertEquals(225, estimator.getSmoothedRtt());
+        assertEquals(225 + 4 * 125, estimator.getTimeout());
+    }
+
+    @Test
+    public void timeout_isBetweenFloorAndCeiling() throws Exception {
+        estimator.addSample(1000);
+        assertEquals(MAX_TIMEOUT, estimator.getTimeout());
+        for (int i = 0; i < 100; i++)
+            estimator.addSample(20);
+        assertEquals(20, estimator.getSmoothedRtt());
+        assertEquals(MIN_TIMEOUT, estimator.getTimeout());
+    }
+}
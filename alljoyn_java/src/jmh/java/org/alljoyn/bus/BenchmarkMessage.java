@@ -0,0 +1,63 @@
+/*
+ * Copyright AllSeen Alliance. All rights reserved.
+ *
+ *    Permission to use, copy, modify, and/or distribute this software for any
+ *    purpose with or without fee is hereby granted, provided that the above
+ *    copyright notice and this permission notice appear in all copies.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ *    WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ *    MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ *    ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ *    WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ *    ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ *    OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.alljoyn.bus;
+
+import org.alljoyn.bus.annotation.Position;
+import org.alljoyn.bus.annotation.Signature;
+
+/**
+ * A struct with the layout of the A3 group message, "(sisayas)": sender
+ * address, reason, object, extra bytes and destination addresses.
+ */
+public class BenchmarkMessage {
+
+    /** The kind of message, marshalled by its ordinal like any bus enum. */
+    public enum Reason {
+        DATA, CONTROL, JOIN, LEAVE
+    }
+
+    @Position(0)
+    @Signature("s")
+    public String senderAddress = "";
+
+    @Position(1)
+    @Signature("i")
+    public int reason;
+
+    @Position(2)
+    @Signature("s")
+    public String object = "";
+
+    @Position(3)
+    @Signature("ay")
+    public byte[] bytes = new byte[0];
+
+    @Position(4)
+    @Signature("as")
+    public String[] addresses = new String[0];
+
+    public BenchmarkMessage() {}
+
+    public BenchmarkMessage(String senderAddress, Reason reason, String object, byte[] bytes,
+                            String[] addresses) {
+        this.senderAddress = senderAddress;
+        this.reason = reason.ordinal();
+        this.object = object;
+        this.bytes = bytes;
+        this.addresses = addresses;
+    }
+}
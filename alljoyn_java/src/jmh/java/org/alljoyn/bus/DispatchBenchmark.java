@@ -0,0 +1,188 @@
+/*
+ * Copyright AllSeen Alliance. All rights reserved.
+ *
+ *    Permission to use, copy, modify, and/or distribute this software for any
+ *    purpose with or without fee is hereby granted, provided that the above
+ *    copyright notice and this permission notice appear in all copies.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ *    WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ *    MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ *    ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ *    WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ *    ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ *    OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.alljoyn.bus;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.alljoyn.bus.annotation.BusMethod;
+import org.alljoyn.bus.annotation.BusSignal;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Dispatch of an A3 "(sisayas)" message through a proxy method call and a
+ * signal emitter.  ProxyBusObject and SignalEmitter end in private native
+ * calls, so the invocation handlers below repeat the Java side of
+ * ProxyBusObject.Handler and SignalEmitter.Emitter on the same proxies and
+ * record the call in place of the native send.
+ *
+ * Signature.split is native too, so the input signatures are precomputed
+ * from the annotations in setup.  Neither liballjoyn_java nor a bus
+ * attachment or router is needed.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DispatchBenchmark {
+
+    /** Counts and keeps the last call in place of the native methods. */
+    static class Recording {
+        public int calls;
+        public String signature;
+        public Object[] args;
+
+        void record(String signature, Object[] args) {
+            this.calls++;
+            this.signature = signature;
+            this.args = args;
+        }
+    }
+
+    /**
+     * The input signature of each bus method and signal.  A single annotated
+     * struct argument has the annotated signature, which is what
+     * InterfaceDescription.getInputSig returns for it.
+     */
+    static Map<Method, String> inputSignatures(Class<?> intf) {
+        Map<Method, String> signatures = new HashMap<Method, String>();
+        for (Method m : intf.getMethods()) {
+            BusMethod busMethod = m.getAnnotation(BusMethod.class);
+            BusSignal busSignal = m.getAnnotation(BusSignal.class);
+            if (busMethod != null) {
+                signatures.put(m, busMethod.signature());
+            } else if (busSignal != null) {
+                signatures.put(m, busSignal.signature());
+            }
+        }
+        return signatures;
+    }
+
+    /** The Java side of SignalEmitter.Emitter.invoke, recording the signal. */
+    static class RecordingEmitter implements InvocationHandler {
+        final Recording recording = new Recording();
+        final Map<Method, String> signatures;
+
+        RecordingEmitter(Map<Method, String> signatures) {
+            this.signatures = signatures;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            for (Class<?> i : proxy.getClass().getInterfaces()) {
+                for (Method m : i.getMethods()) {
+                    if (method.getName().equals(m.getName())) {
+                        InterfaceDescription.getName(i);
+                        InterfaceDescription.getName(m);
+                        recording.record(signatures.get(m), args);
+                    }
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * The Java side of ProxyBusObject.Handler.invoke: the invocation is
+     * resolved on the first call and cached by Method, and the reply is
+     * checked against the return type.
+     */
+    static class RecordingProxyHandler implements InvocationHandler {
+        final Recording recording = new Recording();
+        final Map<Method, String> signatures;
+
+        static class Invocation {
+            final String interfaceName;
+            final String methodName;
+            final String inputSig;
+            final Class<?> replyType;
+
+            Invocation(Method method, String inputSig) {
+                this.interfaceName = InterfaceDescription.getName(method.getDeclaringClass());
+                this.methodName = InterfaceDescription.getName(method);
+                this.inputSig = inputSig;
+                this.replyType = method.getReturnType() == boolean.class ? Boolean.class : method.getReturnType();
+            }
+        }
+
+        final ConcurrentMap<Method, Invocation> invocationCache = new ConcurrentHashMap<Method, Invocation>();
+
+        RecordingProxyHandler(Map<Method, String> signatures) {
+            this.signatures = signatures;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws BusException {
+            Invocation invocation = invocationCache.get(method);
+            if (invocation == null) {
+                invocation = new Invocation(method, signatures.get(method));
+                Invocation cached = invocationCache.putIfAbsent(method, invocation);
+                if (cached != null) {
+                    invocation = cached;
+                }
+            }
+            recording.record(invocation.inputSig, args);
+            Object value = Boolean.TRUE;
+            if (!invocation.replyType.isInstance(value)) {
+                throw new MarshalBusException("cannot marshal reply into " + invocation.replyType);
+            }
+            return value;
+        }
+    }
+
+    private BenchmarkMessage message;
+
+    private BenchmarkInterface emitter;
+
+    private BenchmarkInterface proxy;
+
+    @Setup
+    public void setup() {
+        message = new BenchmarkMessage("sender", BenchmarkMessage.Reason.DATA, "object",
+                                       new byte[64], new String[] { "a", "b", "c" });
+        Map<Method, String> signatures = inputSignatures(BenchmarkInterface.class);
+        emitter = newProxy(new RecordingEmitter(signatures));
+        proxy = newProxy(new RecordingProxyHandler(signatures));
+    }
+
+    private static BenchmarkInterface newProxy(InvocationHandler handler) {
+        return (BenchmarkInterface) Proxy.newProxyInstance(BenchmarkInterface.class.getClassLoader(),
+                                                           new Class<?>[] { BenchmarkInterface.class },
+                                                           handler);
+    }
+
+    @Benchmark
+    public void emitterInvoke() throws BusException {
+        emitter.receive(message);
+    }
+
+    @Benchmark
+    public boolean proxyInvoke() throws BusException {
+        return proxy.send(message);
+    }
+}
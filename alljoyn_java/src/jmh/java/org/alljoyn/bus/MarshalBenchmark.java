@@ -0,0 +1,118 @@
+/*
+ * Copyright AllSeen Alliance. All rights reserved.
+ *
+ *    Permission to use, copy, modify, and/or distribute this software for any
+ *    purpose with or without fee is hereby granted, provided that the above
+ *    copyright notice and this permission notice appear in all copies.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ *    WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ *    MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ *    ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ *    WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ *    ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ *    OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package org.alljoyn.bus;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * The pure-Java steps of marshalling an A3 "(sisayas)" message: signature
+ * computation, struct field reflection, enum ordinals and variants.  None of
+ * these reach native code, so no library or bus is needed.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MarshalBenchmark {
+
+    /*
+     * MsgArg's enum helpers are private, so they are reached through method
+     * handles resolved once; constant handles are inlined by the JIT.
+     */
+    private static final MethodHandle GET_ENUM_VALUE = msgArgHandle("getEnumValue", Object.class);
+
+    private static final MethodHandle GET_ENUM_OBJECT = msgArgHandle("getEnumObject", Type.class, int.class);
+
+    private static MethodHandle msgArgHandle(String name, Class<?>... parameterTypes) {
+        try {
+            Method method = MsgArg.class.getDeclaredMethod(name, parameterTypes);
+            method.setAccessible(true);
+            return MethodHandles.lookup().unreflect(method);
+        } catch (ReflectiveOperationException ex) {
+            throw new ExceptionInInitializerError(ex);
+        }
+    }
+
+    private BenchmarkMessage message;
+
+    private Type[] fieldTypes;
+
+    @Setup
+    public void setup() throws BusException {
+        message = new BenchmarkMessage("sender", BenchmarkMessage.Reason.DATA, "object",
+                                       new byte[64], new String[] { "a", "b", "c" });
+        Field[] fields = Signature.structFields(BenchmarkMessage.class);
+        fieldTypes = new Type[fields.length];
+        for (int i = 0; i < fields.length; ++i) {
+            fieldTypes[i] = fields[i].getGenericType();
+        }
+    }
+
+    /** Signature of each struct member type, as done for unannotated members. */
+    @Benchmark
+    public String typeSig() throws BusException {
+        String sig = "";
+        for (Type type : fieldTypes) {
+            sig += Signature.typeSig(type, null);
+        }
+        return sig;
+    }
+
+    @Benchmark
+    public String structSig() throws BusException {
+        return Signature.structSig(BenchmarkMessage.class);
+    }
+
+    @Benchmark
+    public Field[] structFields() throws BusException {
+        return Signature.structFields(BenchmarkMessage.class);
+    }
+
+    /** The member values handed to MsgArg when marshalling the struct. */
+    @Benchmark
+    public Object[] structArgs() throws Exception {
+        return Signature.structArgs(message);
+    }
+
+    @Benchmark
+    public int enumValue() throws Throwable {
+        return (int) GET_ENUM_VALUE.invokeExact((Object) BenchmarkMessage.Reason.LEAVE);
+    }
+
+    @Benchmark
+    public Enum<?> enumObject() throws Throwable {
+        return (Enum<?>) GET_ENUM_OBJECT.invokeExact((Type) BenchmarkMessage.Reason.class,
+                                                     BenchmarkMessage.Reason.LEAVE.ordinal());
+    }
+
+    @Benchmark
+    public String variant() throws BusException {
+        return new Variant(message, "(sisayas)").getSignature();
+    }
+}
@@ -24,11 +24,13 @@ import java.nio.charset.CharacterCodingException;
 import java.nio.charset.Charset;
 import java.nio.charset.CharsetEncoder;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -1599,6 +1601,53 @@ public class BusAttachment {
         return status;
     }
 
+    /**
+     * The public methods annotated as signal handlers, per class.  Classes do not change at
+     * runtime, so the scan of getMethods() is done once per class and shared by every bus
+     * attachment.
+     */
+    private static Map<Class<?>, List<Method>> signalHandlerMethodCache =
+        new ConcurrentHashMap<Class<?>, List<Method>>();
+
+    /** The signal handler annotation of each method in signalHandlerMethodCache. */
+    private static Map<Method, BusSignalHandler> signalHandlerAnnotationCache =
+        new ConcurrentHashMap<Method, BusSignalHandler>();
+
+    /**
+     * Gets the public methods of a class that are annotated as signal handlers.
+     * The result is computed once per class and can be passed to
+     * {@link #registerSignalHandlers(Object, List)} and
+     * {@link #unregisterSignalHandlers(Object, List)} for any instance of it.
+     *
+     * @param cls the class declaring (or inheriting) the signal handlers
+     * @return an unmodifiable list of the annotated methods
+     * @see org.alljoyn.bus.annotation.BusSignalHandler
+     */
+    public static List<Method> getSignalHandlerMethods(Class<?> cls) {
+        List<Method> handlerMethods = signalHandlerMethodCache.get(cls);
+        if (handlerMethods == null) {
+            List<Method> methods = new ArrayList<Method>();
+            for (Method m : cls.getMethods()) {
+                BusSignalHandler a = m.getAnnotation(BusSignalHandler.class);
+                if (a != null) {
+                    signalHandlerAnnotationCache.put(m, a);
+                    methods.add(m);
+                }
+            }
+            handlerMethods = Collections.unmodifiableList(methods);
+            signalHandlerMethodCache.put(cls, handlerMethods);
+        }
+        return handlerMethods;
+    }
+
+    private static BusSignalHandler getSignalHandlerAnnotation(Method m) {
+        BusSignalHandler a = signalHandlerAnnotationCache.get(m);
+        if (a == null) {
+            a = m.getAnnotation(BusSignalHandler.class);
+        }
+        return a;
+    }
+
     /**
      * Registers all public methods that are annotated as signal handlers.
      *
@@ -1613,9 +1662,25 @@ public class BusAttachment {
      *         </ul>
      */
     public Status registerSignalHandlers(Object obj) {
+        return registerSignalHandlers(obj, getSignalHandlerMethods(obj.getClass()));
+    }
+
+    /**
+     * Registers the given signal handler methods of an object.
+     * This is the bulk form of {@link #registerSignalHandlers(Object)} for callers
+     * that already hold the handler list, e.g. from {@link #getSignalHandlerMethods(Class)}.
+     *
+     * @param obj object with methods annotated with as signal handlers
+     * @param handlerMethods the methods of {@code obj} annotated as signal handlers;
+     *                       methods without the annotation are skipped
+     * @return OK if the register is succesful, otherwise the status of the first
+     *         handler that failed to register
+     * @see #registerSignalHandlers(Object)
+     */
+    public Status registerSignalHandlers(Object obj, List<Method> handlerMethods) {
         Status status = Status.OK;
-        for (Method m : obj.getClass().getMethods()) {
-            BusSignalHandler a = m.getAnnotation(BusSignalHandler.class);
+        for (Method m : handlerMethods) {
+            BusSignalHandler a = getSignalHandlerAnnotation(m);
             if (a != null) {
                 if (a.rule().equals("") == false) {
                     status = registerSignalHandlerWithRule(a.iface(), a.signal(), obj, m, a.rule());
@@ -1647,9 +1712,21 @@ public class BusAttachment {
      * @see org.alljoyn.bus.annotation.BusSignalHandler
      */
     public void unregisterSignalHandlers(Object obj) {
-        for (Method m : obj.getClass().getMethods()) {
-            BusSignalHandler a = m.getAnnotation(BusSignalHandler.class);
-            if (a != null) {
+        unregisterSignalHandlers(obj, getSignalHandlerMethods(obj.getClass()));
+    }
+
+    /**
+     * Unregisters the given signal handler methods of an object.
+     *
+     * @param obj object with previously annotated signal handlers that have
+     *            been registered
+     * @param handlerMethods the methods of {@code obj} annotated as signal handlers;
+     *                       methods without the annotation are skipped
+     * @see #unregisterSignalHandlers(Object)
+     */
+    public void unregisterSignalHandlers(Object obj, List<Method> handlerMethods) {
+        for (Method m : handlerMethods) {
+            if (getSignalHandlerAnnotation(m) != null) {
                 unregisterSignalHandler(obj, m);
             }
         }
@@ -19,11 +19,14 @@ package org.alljoyn.bus;
 import java.lang.reflect.Method;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.alljoyn.bus.annotation.AccessPermission;
 import org.alljoyn.bus.annotation.BusAnnotation;
@@ -52,19 +55,33 @@ class InterfaceDescription {
     private static final int AJ_IFC_SECURITY_REQUIRED  = 1; /**< Security is required for an interface */
     private static final int AJ_IFC_SECURITY_OFF       = 2; /**< Security does not apply to this interface */
 
-    private static Map<String, Translator> translatorCache = new HashMap<String, Translator>();
-    private class Property {
+    private static Map<String, Translator> translatorCache = new ConcurrentHashMap<String, Translator>();
 
-        public String name;
+    /**
+     * The Java-side description of each bus interface class, built by reflection the first time
+     * the interface is created on any bus attachment and shared by all later creations.
+     */
+    private static ConcurrentMap<Class<?>, Definition> definitionCache =
+        new ConcurrentHashMap<Class<?>, Definition>();
+
+    private static class Property {
+
+        public final String name;
 
-        public TreeMap<String, String> annotations;
+        public final TreeMap<String, String> annotations;
 
-        public String signature;
+        public final String signature;
 
         public Method get;
 
         public Method set;
 
+        /** The access type, READ, WRITE or RW. */
+        public int access;
+
+        /** The BusProperty annotation flags. */
+        public int annotation;
+
         public Property(String name, String signature, TreeMap<String, String> annotations) {
             this.name = name;
             this.signature = signature;
@@ -72,6 +89,86 @@ class InterfaceDescription {
         }
     }
 
+    private static class Member {
+
+        public final Method method;
+
+        public final int type;
+
+        public final String name;
+
+        public final String inputSig;
+
+        public final String outSig;
+
+        public final int annotation;
+
+        public final String accessPerm;
+
+        public final BusAnnotation[] annotations;
+
+        public Member(Method method, int type, int annotation, String accessPerm) throws AnnotationBusException {
+            this.method = method;
+            this.type = type;
+            this.name = getName(method);
+            this.inputSig = getInputSig(method);
+            this.outSig = getOutSig(method);
+            this.annotation = annotation;
+            this.accessPerm = accessPerm;
+            BusAnnotations dbusAnnotations = method.getAnnotation(BusAnnotations.class);
+            this.annotations = (dbusAnnotations != null) ? dbusAnnotations.value() : new BusAnnotation[0];
+        }
+    }
+
+    /** A member or property description found on a bus interface. */
+    private static class Description {
+
+        public final boolean isProperty;
+
+        public final String name;
+
+        public final String description;
+
+        public final boolean isSessionlessSignal;
+
+        public Description(boolean isProperty, String name, String description, boolean isSessionlessSignal) {
+            this.isProperty = isProperty;
+            this.name = name;
+            this.description = description;
+            this.isSessionlessSignal = isSessionlessSignal;
+        }
+    }
+
+    /**
+     * Everything create() needs to know about a bus interface class.  It only depends on the
+     * class, so it is computed once and then only read.
+     */
+    private static class Definition {
+
+        /** Status.BAD_ANNOTATION if the interface properties are malformed, Status.OK otherwise. */
+        public Status status;
+
+        public String name;
+
+        public int securePolicy;
+
+        public List<Method> members;
+
+        public List<Member> memberDefinitions;
+
+        public Map<String, Method> membersByName;
+
+        public Map<String, Property> properties;
+
+        public BusAnnotation[] annotations;
+
+        public BusInterface busInterface;
+
+        public List<Description> descriptions;
+
+        public boolean announced;
+    }
+
     /**
      * The native interface description handle.
      *
@@ -84,6 +181,9 @@ class InterfaceDescription {
      */
     private long handle;
 
+    /** The Java-side description of this interface, shared with other instances. */
+    private Definition definition;
+
     /** The members of this interface. */
     private List<Method> members;
 
@@ -131,10 +231,8 @@ class InterfaceDescription {
      * implementations.
      */
     private Method getMember(String name) {
-        for (Method m : members) {
-            if (InterfaceDescription.getName(m).equals(name)) {
-                return m;
-            }
+        if (definition != null) {
+            return definition.membersByName.get(name);
         }
         return null;
     }
@@ -144,10 +242,9 @@ class InterfaceDescription {
      * implementations.
      */
     private Method[] getProperty(String name) {
-        for (Property p : properties.values()) {
-            if (p.name.equals(name)) {
-                return new Method[] { p.get, p.set };
-            }
+        Property p = properties.get(name);
+        if (p != null) {
+            return new Method[] { p.get, p.set };
         }
         return null;
     }
@@ -155,81 +252,109 @@ class InterfaceDescription {
     /**
      * Create the native interface description for the busInterface.
      *
+     * The reflective part is looked up in (or added to) the process-wide definition cache, so
+     * only the native calls are made again when the same interface is created on another bus
+     * attachment.
+     *
      * @param busAttachment the connection the interface is on
      * @param busInterface the interface
      */
     public Status create(BusAttachment busAttachment, Class<?> busInterface)
             throws AnnotationBusException {
-        Status status = getProperties(busInterface);
-        if (status != Status.OK) {
-            return status;
-        }
-        status = getMembers(busInterface);
-        if (status != Status.OK) {
-            return status;
+        Definition def = getDefinition(busInterface);
+        if (def.status != Status.OK) {
+            return def.status;
         }
+        definition = def;
+        members = def.members;
+        properties = def.properties;
 
-        int securePolicy = AJ_IFC_SECURITY_INHERIT;
-        Secure secureAnnotation = busInterface.getAnnotation(Secure.class);
-        if (secureAnnotation != null) {
-            if (secureAnnotation.value().equals("required")) {
-                securePolicy = AJ_IFC_SECURITY_REQUIRED;
-            } else if (secureAnnotation.value().equals("off")) {
-                securePolicy = AJ_IFC_SECURITY_OFF;
-            } else {
-                /*
-                 * In C++ if an interface provides an unknown security annotation
-                 * it automatically defaults to the inherit for security. For
-                 * that reason the Java code will do the same.
-                 */
-                securePolicy = AJ_IFC_SECURITY_INHERIT;
-            }
-        } else {
-            securePolicy = AJ_IFC_SECURITY_INHERIT;
-        }
-        status = create(busAttachment, getName(busInterface), securePolicy, properties.size(),
+        Status status = create(busAttachment, def.name, def.securePolicy, properties.size(),
                         members.size());
         if (status != Status.OK) {
             return status;
         }
-        status = addProperties(busInterface);
+        status = addProperties();
         if (status != Status.OK) {
             return status;
         }
-        status = addMembers(busInterface);
+        status = addMembers();
         if (status != Status.OK) {
             return status;
         }
 
         // now we need to add the DBus annotations for the interface;
         // this must be done *before* calling create
-        BusAnnotations busAnnotations = busInterface.getAnnotation(BusAnnotations.class);
-        if (busAnnotations != null)
-        {
-            for (BusAnnotation annotation : busAnnotations.value()) {
-                addAnnotation(annotation.name(), annotation.value());
+        for (BusAnnotation annotation : def.annotations) {
+            addAnnotation(annotation.name(), annotation.value());
+        }
+
+        configureDescriptions(busAttachment);
+
+        announced = def.announced;
+
+        activate();
+        return Status.OK;
+    }
+
+    /**
+     * Get the cached definition of a bus interface, building it on first use.
+     *
+     * @param busInterface the interface
+     */
+    private static Definition getDefinition(Class<?> busInterface) throws AnnotationBusException {
+        Definition def = definitionCache.get(busInterface);
+        if (def == null) {
+            def = buildDefinition(busInterface);
+            Definition cached = definitionCache.putIfAbsent(busInterface, def);
+            if (cached != null) {
+                def = cached;
             }
         }
+        return def;
+    }
+
+    private static Definition buildDefinition(Class<?> busInterface) throws AnnotationBusException {
+        Definition def = new Definition();
+        Method[] methods = busInterface.getMethods();
 
-        configureDescriptions(busAttachment, busInterface);
+        def.properties = new HashMap<String, Property>();
+        def.status = getProperties(methods, def.properties);
+        if (def.status != Status.OK) {
+            return def;
+        }
+        getMembers(methods, def);
 
-        BusInterface intf = busInterface.getAnnotation(BusInterface.class);
-        if (intf != null) {
-            if(intf.announced().equals("true")) {
-                announced = true;
+        Secure secureAnnotation = busInterface.getAnnotation(Secure.class);
+        if (secureAnnotation != null) {
+            if (secureAnnotation.value().equals("required")) {
+                def.securePolicy = AJ_IFC_SECURITY_REQUIRED;
+            } else if (secureAnnotation.value().equals("off")) {
+                def.securePolicy = AJ_IFC_SECURITY_OFF;
             } else {
-                announced = false;
+                /*
+                 * In C++ if an interface provides an unknown security annotation
+                 * it automatically defaults to the inherit for security. For
+                 * that reason the Java code will do the same.
+                 */
+                def.securePolicy = AJ_IFC_SECURITY_INHERIT;
             }
         } else {
-            announced = false;
+            def.securePolicy = AJ_IFC_SECURITY_INHERIT;
         }
+        def.name = getName(busInterface);
 
-        activate();
-        return Status.OK;
+        BusAnnotations busAnnotations = busInterface.getAnnotation(BusAnnotations.class);
+        def.annotations = (busAnnotations != null) ? busAnnotations.value() : new BusAnnotation[0];
+
+        def.busInterface = busInterface.getAnnotation(BusInterface.class);
+        def.descriptions = getDescriptions(methods, def.busInterface);
+        def.announced = def.busInterface != null && def.busInterface.announced().equals("true");
+        return def;
     }
 
-    private void configureDescriptions(BusAttachment busAttachment, Class<?> busInterface) throws AnnotationBusException {
-        BusInterface ifcNote = busInterface.getAnnotation(BusInterface.class);
+    private void configureDescriptions(BusAttachment busAttachment) throws AnnotationBusException {
+        BusInterface ifcNote = definition.busInterface;
         if(null == ifcNote) return;
 
         boolean hasDescriptions = false;
@@ -239,26 +364,13 @@ class InterfaceDescription {
             hasDescriptions = true;
         }
 
-        for(Method method : busInterface.getMethods()) {
-            String name = getName(method);
-
-            BusMethod methodNote = method.getAnnotation(BusMethod.class);
-            if(null != methodNote && (methodNote.description().length() > 0)){
-                setMemberDescription(name, methodNote.description(), false);
-                hasDescriptions = true;
-            }
-
-            BusSignal signalNote = method.getAnnotation(BusSignal.class);
-            if(null != signalNote && (signalNote.description().length() > 0)){
-                setMemberDescription(name, signalNote.description(), signalNote.sessionless());
-                hasDescriptions = true;
-            }
-
-            BusProperty propNote = method.getAnnotation(BusProperty.class);
-            if(null != propNote && (propNote.description().length() > 0)){
-                setPropertyDescription(name, propNote.description());
-                hasDescriptions = true;
+        for(Description d : definition.descriptions) {
+            if (d.isProperty) {
+                setPropertyDescription(d.name, d.description);
+            } else {
+                setMemberDescription(d.name, d.description, d.isSessionlessSignal);
             }
+            hasDescriptions = true;
         }
 
         if(hasDescriptions) {
@@ -283,10 +395,36 @@ class InterfaceDescription {
         }
     }
 
-    private Status getProperties(Class<?> busInterface) throws AnnotationBusException {
-        for (Method method : busInterface.getMethods()) {
+    private static List<Description> getDescriptions(Method[] methods, BusInterface ifcNote) {
+        List<Description> descriptions = new ArrayList<Description>();
+        if(null == ifcNote) return descriptions;
+
+        for(Method method : methods) {
+            String name = getName(method);
+
+            BusMethod methodNote = method.getAnnotation(BusMethod.class);
+            if(null != methodNote && (methodNote.description().length() > 0)){
+                descriptions.add(new Description(false, name, methodNote.description(), false));
+            }
+
+            BusSignal signalNote = method.getAnnotation(BusSignal.class);
+            if(null != signalNote && (signalNote.description().length() > 0)){
+                descriptions.add(new Description(false, name, signalNote.description(), signalNote.sessionless()));
+            }
 
-            if (method.getAnnotation(BusProperty.class) != null) {
+            BusProperty propNote = method.getAnnotation(BusProperty.class);
+            if(null != propNote && (propNote.description().length() > 0)){
+                descriptions.add(new Description(true, name, propNote.description(), false));
+            }
+        }
+        return descriptions;
+    }
+
+    private static Status getProperties(Method[] methods, Map<String, Property> properties) throws AnnotationBusException {
+        for (Method method : methods) {
+
+            BusProperty p = method.getAnnotation(BusProperty.class);
+            if (p != null) {
                 String name = getName(method);
                 Property property = properties.get(name);
                 BusAnnotations propertyAnnotations = method.getAnnotation(BusAnnotations.class);
@@ -312,36 +450,29 @@ class InterfaceDescription {
                 } else {
                     return Status.BAD_ANNOTATION;
                 }
+                property.annotation = p.annotation();
                 properties.put(name, property);
             }
         }
+
+        for (Property property : properties.values()) {
+            property.access = ((property.get != null) ? READ : 0) | ((property.set != null) ? WRITE : 0);
+            if (property.annotation == BusProperty.ANNOTATE_EMIT_CHANGED_SIGNAL) {
+                property.annotations.put("org.freedesktop.DBus.Property.EmitsChangedSignal", "true");
+            } else if (property.annotation == BusProperty.ANNOTATE_EMIT_CHANGED_SIGNAL_INVALIDATES) {
+                property.annotations.put("org.freedesktop.DBus.Property.EmitsChangedSignal", "invalidates");
+            }
+        }
         return Status.OK;
     }
 
-    private Status addProperties(Class<?> busInterface) throws AnnotationBusException {
+    private Status addProperties() throws AnnotationBusException {
         for (Property property : properties.values()) {
-            int access = ((property.get != null) ? READ : 0) | ((property.set != null) ? WRITE : 0);
-            int annotation = 0;
-
-            for (Method method : busInterface.getMethods()) {
-                BusProperty p = method.getAnnotation(BusProperty.class);
-                if (p != null) {
-                    if (getName(method).equals(property.name)) {
-                        annotation = p.annotation();
-                    }
-                }
-            }
-            Status status = addProperty(property.name, property.signature, access, annotation);
+            Status status = addProperty(property.name, property.signature, property.access, property.annotation);
             if (status != Status.OK) {
                 return status;
             }
 
-            if (annotation == BusProperty.ANNOTATE_EMIT_CHANGED_SIGNAL) {
-                property.annotations.put("org.freedesktop.DBus.Property.EmitsChangedSignal", "true");
-            } else if (annotation == BusProperty.ANNOTATE_EMIT_CHANGED_SIGNAL_INVALIDATES) {
-                property.annotations.put("org.freedesktop.DBus.Property.EmitsChangedSignal", "invalidates");
-            }
-
             // loop through the map of properties and add them via native code
             for(Entry<String, String> entry : property.annotations.entrySet()) {
                 addPropertyAnnotation(property.name, entry.getKey(), entry.getValue());
@@ -350,53 +481,48 @@ class InterfaceDescription {
         return Status.OK;
     }
 
-    private Status getMembers(Class<?> busInterface) throws AnnotationBusException {
-        for (Method method : busInterface.getMethods()) {
-            if (method.getAnnotation(BusMethod.class) != null) {
-                members.add(method);
-            } else if (method.getAnnotation(BusSignal.class) != null) {
-                members.add(method);
+    private static void getMembers(Method[] methods, Definition def) throws AnnotationBusException {
+        List<Method> members = new ArrayList<Method>();
+        List<Member> memberDefinitions = new ArrayList<Member>();
+        Map<String, Method> membersByName = new HashMap<String, Method>();
+        for (Method method : methods) {
+            BusMethod m = method.getAnnotation(BusMethod.class);
+            BusSignal s = method.getAnnotation(BusSignal.class);
+            Member member;
+            if (m != null) {
+                member = new Member(method, METHOD_CALL, m.annotation(), getAccessPerm(method));
+            } else if (s != null) {
+                member = new Member(method, SIGNAL, s.annotation(), getAccessPerm(method));
+            } else {
+                continue;
+            }
+            members.add(method);
+            memberDefinitions.add(member);
+            if (!membersByName.containsKey(member.name)) {
+                membersByName.put(member.name, method);
             }
         }
-        return Status.OK;
+        def.members = Collections.unmodifiableList(members);
+        def.memberDefinitions = memberDefinitions;
+        def.membersByName = membersByName;
     }
 
-    private Status addMembers(Class<?> busInterface) throws AnnotationBusException {
-        for (Method member : members) {
-            int type = INVALID;
-            int annotation = 0;
-            String accessPerm = null;
-            BusMethod m = member.getAnnotation(BusMethod.class);
-            BusSignal s = member.getAnnotation(BusSignal.class);
-            AccessPermission ap = member.getAnnotation(AccessPermission.class);
+    private static String getAccessPerm(Method method) {
+        AccessPermission ap = method.getAnnotation(AccessPermission.class);
+        return (ap != null) ? ap.value() : null;
+    }
 
-            if (m != null) {
-                type = METHOD_CALL;
-                annotation = m.annotation();
-            } else if (s != null) {
-                type = SIGNAL;
-                annotation = s.annotation();
+    private Status addMembers() throws AnnotationBusException {
+        for (Member member : definition.memberDefinitions) {
+            Status status = addMember(member.type, member.name, member.inputSig,
+                                      member.outSig, member.annotation, member.accessPerm);
+            if (status != Status.OK) {
+                return status;
             }
-            if (type != INVALID) {
-                if(ap != null) {
-                    accessPerm = ap.value();
-                }
 
-                String memberName = getName(member);
-                Status status = addMember(type, memberName, getInputSig(member),
-                                          getOutSig(member), annotation, accessPerm);
-                if (status != Status.OK) {
-                    return status;
-                }
-
-                // pull out the DBus annotations
-                BusAnnotations dbusAnnotations = member.getAnnotation(BusAnnotations.class);
-                if (dbusAnnotations != null)
-                {
-                    for (BusAnnotation busAnnotation : dbusAnnotations.value()) {
-                        addMemberAnnotation(memberName, busAnnotation.name(), busAnnotation.value());
-                    }
-                }
+            // pull out the DBus annotations
+            for (BusAnnotation busAnnotation : member.annotations) {
+                addMemberAnnotation(member.name, busAnnotation.name(), busAnnotation.value());
             }
         }
         return Status.OK;
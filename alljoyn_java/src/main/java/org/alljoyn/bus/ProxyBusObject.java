@@ -20,11 +20,10 @@ import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 import java.lang.reflect.Type;
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.alljoyn.bus.annotation.BusProperty;
 
@@ -144,28 +143,45 @@ public class ProxyBusObject {
     /** The invocation handler for the bus interfaces. */
     private class Handler implements InvocationHandler {
 
+        /**
+         * The reflective information needed to invoke a proxy method, resolved once when the
+         * method is first invoked and immutable afterwards so that it can be shared freely
+         * between the threads calling into the proxy.
+         */
         private class Invocation {
-            public Method method;
+            public final Method method;
 
-            public boolean isMethod;
-            public boolean isGet;
+            public final boolean isMethod;
+            public final boolean isGet;
 
-            public String inputSig;
-            public String outSig;
+            public final String inputSig;
+            public final String outSig;
 
-            public String interfaceName;
-            public String methodName;
+            public final String interfaceName;
+            public final String methodName;
 
-            public Type genericReturnType;
-            public Class<?> returnType;
+            public final Type genericReturnType;
+            public final Class<?> returnType;
+
+            /**
+             * The class a non-null reply must be an instance of, i.e. the boxed return type for
+             * primitives, or null if the reply is not checked (void methods).
+             */
+            public final Class<?> replyType;
+
+            /** True if a null reply cannot be returned to the caller (primitive non-void return types). */
+            public final boolean replyRequired;
 
             public Invocation(Method method) throws BusException {
                 this.method = method;
                 if (method.getAnnotation(BusProperty.class) != null) {
+                    this.isMethod = false;
                     this.isGet = method.getName().startsWith("get");
+                    this.inputSig = null;
                     this.outSig = InterfaceDescription.getPropertySig(method);
                 } else {
                     this.isMethod = true;
+                    this.isGet = false;
                     this.outSig = InterfaceDescription.getOutSig(method);
                     this.inputSig = InterfaceDescription.getInputSig(method);
                 }
@@ -173,13 +189,31 @@ public class ProxyBusObject {
                 this.methodName = InterfaceDescription.getName(method);
                 this.genericReturnType = method.getGenericReturnType();
                 this.returnType = method.getReturnType();
+
+                /*
+                 * The JNI layer can't perform complete type checking (at least not easily),
+                 * so the reply is checked against the return type on each call.  The conditions
+                 * are taken from the InvocationHandler documentation and resolved here once.
+                 */
+                if (returnType.isPrimitive()) {
+                    this.replyRequired = !returnType.isAssignableFrom(Void.TYPE);
+                    this.replyType = replyRequired ? boxedType(returnType) : null;
+                } else {
+                    this.replyRequired = false;
+                    this.replyType = returnType;
+                }
             }
         };
 
-        private Map<String, List<Invocation>> invocationCache;
+        /**
+         * Cached invocations keyed by the invoked method.  The proxy hands back the same Method
+         * instances on every call, so lookups hit the identity check of the map and no lock is
+         * taken on the calling thread.
+         */
+        private final ConcurrentMap<Method, Invocation> invocationCache;
 
         public Handler() {
-            this.invocationCache = new HashMap<String, List<Invocation>>();
+            this.invocationCache = new ConcurrentHashMap<Method, Invocation>();
         }
 
         @Override
@@ -187,76 +221,22 @@ public class ProxyBusObject {
             /*
              * Some notes on performance.
              *
-             * Reflection is very expensive.  So first pass at optimization is to cache the
-             * reflection calls that lookup names and annotations the first time the method is
-             * invoked.
-             *
-             * Using a Method as a HashMap key is expensive.  Using method.getName() as the key
-             * is less expensive.  But method names may not be unique (they can be overloaded), so
-             * need to fall back to Method.equals if more than one method with the same name exists.
+             * Reflection is very expensive.  So the reflection calls that lookup names,
+             * annotations, signatures and return types are made only the first time the method
+             * is invoked and the result is cached by Method.  Proxies are shared between the bus
+             * threads and the application threads, so the cache is a concurrent map: two threads
+             * racing on the first call may both build an Invocation, but only one is kept.
              */
-            Invocation invocation = null;
-            String methodName = method.getName();
-            List<Invocation> invocationList = invocationCache.get(methodName);
-            if (invocationList != null) {
-                if (invocationList.size() == 1) {
-                    /* The fast path. */
-                    invocation = invocationList.get(0);
-                } else {
-                    /* The slow path.  Two Java methods exist with the same name for this proxy. */
-                    for (Invocation i : invocationList) {
-                        if (method.equals(i.method)) {
-                            invocation = i;
-                            break;
-                        }
-                    }
-                    if (invocation == null) {
-                        invocation = new Invocation(method);
-                        invocationList.add(invocation);
-                    }
+            Invocation invocation = invocationCache.get(method);
+            if (invocation == null) {
+                if (method.getDeclaringClass() == Object.class) {
+                    return invokeObjectMethod(proxy, method, args);
                 }
-            } else {
-                /*
-                 * The very slow path.  The first time a proxy method is invoked.
-                 *
-                 * Walk through all the methods looking for ones that match the invoked method name.
-                 * This creates a list of all the cached invocation information that we'll use later
-                 * on the next method call.
-                 */
-                invocationList = new ArrayList<Invocation>();
-                for (Class<?> i : proxy.getClass().getInterfaces()) {
-                    for (Method m : i.getMethods()) {
-                        if (methodName.equals(m.getName())) {
-                            Invocation in = new Invocation(m);
-                            invocationList.add(in);
-                            if (method.equals(in.method)) {
-                                invocation = in;
-                            }
-                        }
-                    }
-                }
-                if (invocation == null) {
-                    try {
-                        Class<Object> objectClass = Object.class;
-                        if (method.equals(objectClass.getMethod("toString"))) {
-                            return proxyToString(proxy);
-                        }
-                        if (method.equals(objectClass.getMethod("equals",
-                                objectClass))) {
-                            return proxy == args[0];
-                        }
-                        if (method.equals(objectClass.getMethod("hashCode"))) {
-                            return System.identityHashCode(proxy);
-                        }
-                    } catch (NoSuchMethodException e) {
-                        /*
-                         * If NoSuchMethodException is encountered the code will
-                         * drop through and throw a BusException.
-                         */
-                    }
-                    throw new BusException("No such method: " + method);
+                invocation = new Invocation(method);
+                Invocation cached = invocationCache.putIfAbsent(method, invocation);
+                if (cached != null) {
+                    invocation = cached;
                 }
-                invocationCache.put(methodName, invocationList);
             }
 
             Object value = null;
@@ -284,32 +264,58 @@ public class ProxyBusObject {
                 }
             }
 
-            /*
-             * The JNI layer can't perform complete type checking (at least not easily),
-             * so this extra code is here.  The conditions below are taken from the
-             * InvocationHandler documentation.
-             */
-            boolean doThrow = false;
-            Class<?> returnType = invocation.returnType;
+            boolean doThrow;
             if (value == null) {
-                doThrow = returnType.isPrimitive() && !returnType.isAssignableFrom(Void.TYPE);
-            } else if (returnType.isPrimitive()) {
-                if ((returnType.isAssignableFrom(Byte.TYPE) && !(value instanceof Byte))
-                    || (returnType.isAssignableFrom(Short.TYPE) && !(value instanceof Short))
-                    || (returnType.isAssignableFrom(Integer.TYPE) &&  !(value instanceof Integer))
-                    || (returnType.isAssignableFrom(Long.TYPE) && !(value instanceof Long))
-                    || (returnType.isAssignableFrom(Double.TYPE) && !(value instanceof Double))
-                    || (returnType.isAssignableFrom(Boolean.TYPE) && !(value instanceof Boolean))) {
-                    doThrow = true;
-                }
-            } else if (!returnType.isAssignableFrom(value.getClass())) {
-                doThrow = true;
+                doThrow = invocation.replyRequired;
+            } else {
+                doThrow = invocation.replyType != null && !invocation.replyType.isInstance(value);
             }
             if (doThrow) {
-                throw new MarshalBusException("cannot marshal '" + invocation.outSig + "' into " + returnType);
+                throw new MarshalBusException("cannot marshal '" + invocation.outSig + "' into " + invocation.returnType);
             }
             return value;
         }
+
+        /** Implements the java.lang.Object methods dispatched to the proxy. */
+        private Object invokeObjectMethod(Object proxy, Method method, Object[] args) throws BusException {
+            String name = method.getName();
+            if (name.equals("toString") && method.getParameterTypes().length == 0) {
+                return proxyToString(proxy);
+            }
+            if (name.equals("equals") && method.getParameterTypes().length == 1) {
+                return proxy == args[0];
+            }
+            if (name.equals("hashCode") && method.getParameterTypes().length == 0) {
+                return System.identityHashCode(proxy);
+            }
+            throw new BusException("No such method: " + method);
+        }
+    }
+
+    /**
+     * Returns the wrapper class of a primitive type.
+     *
+     * @param type a primitive type other than void
+     * @return the corresponding wrapper class
+     */
+    private static Class<?> boxedType(Class<?> type) {
+        if (type == Boolean.TYPE) {
+            return Boolean.class;
+        } else if (type == Byte.TYPE) {
+            return Byte.class;
+        } else if (type == Short.TYPE) {
+            return Short.class;
+        } else if (type == Integer.TYPE) {
+            return Integer.class;
+        } else if (type == Long.TYPE) {
+            return Long.class;
+        } else if (type == Double.TYPE) {
+            return Double.class;
+        } else if (type == Float.TYPE) {
+            return Float.class;
+        } else {
+            return Character.class;
+        }
     }
 
     /**
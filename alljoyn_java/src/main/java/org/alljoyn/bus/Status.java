@@ -721,11 +721,41 @@ public enum Status {
         this.errorCode = errorCode;
     }   
 
-    /** Static constructor */
-    private static Status create(int errorCode) {
+    /**
+     * Status lookup table.  Codes are grouped by their high byte (0x00, 0x10, 0x90, ...)
+     * and densely numbered within a group, so the table is indexed first by the high
+     * byte and then by the low byte.  A group array is only as long as its largest
+     * low byte requires.
+     */
+    private static final Status[][] statusTable = new Status[0x100][];
+
+    static {
         for (Status s : Status.values()) {
-            if (s.getErrorCode() == errorCode) {
-                return s;
+            int group = s.errorCode >>> 8;
+            int offset = s.errorCode & 0xff;
+            Status[] statuses = statusTable[group];
+            if (statuses == null || statuses.length <= offset) {
+                Status[] grown = new Status[offset + 1];
+                if (statuses != null) {
+                    System.arraycopy(statuses, 0, grown, 0, statuses.length);
+                }
+                statuses = grown;
+                statusTable[group] = statuses;
+            }
+            statuses[offset] = s;
+        }
+    }
+
+    /**
+     * Static constructor.  Called from native code for every returned status,
+     * so this is a constant time table lookup rather than a scan of values().
+     */
+    static Status create(int errorCode) {
+        if ((errorCode & ~0xffff) == 0) {
+            Status[] statuses = statusTable[errorCode >>> 8];
+            int offset = errorCode & 0xff;
+            if (statuses != null && offset < statuses.length && statuses[offset] != null) {
+                return statuses[offset];
             }
         }
         return NONE;